@@ -18,6 +18,7 @@ package io.jbock.common.truth;
 import java.util.List;
 
 import static io.jbock.common.truth.Fact.makeMessage;
+import static io.jbock.common.truth.Platform.callSite;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -26,14 +27,27 @@ import static java.util.Objects.requireNonNull;
  */
 @SuppressWarnings("OverrideThrowableToString") // We intentionally hide the class name.
 final class AssertionErrorWithFacts extends AssertionError implements ErrorWithFacts {
+    private final List<String> messages;
     private final List<Fact> facts;
 
+    // Rendered on first use, because many failures are caught and discarded without a look at it.
+    // Benign race: at worst, the message is rendered more than once.
+    private String message;
+
     /** Separate cause field, in case initCause() fails. */
     private final Throwable cause;
 
+    /** Whether our constructor has run, after which {@link #fillInStackTrace} works as usual. */
+    private boolean initialized;
+
     AssertionErrorWithFacts(
             List<String> messages, List<Fact> facts, Throwable cause) {
-        super(makeMessage(messages, facts));
+        this(messages, facts, cause, true);
+    }
+
+    AssertionErrorWithFacts(
+            List<String> messages, List<Fact> facts, Throwable cause, boolean fullStackTrace) {
+        this.messages = requireNonNull(messages);
         this.facts = requireNonNull(facts);
 
         this.cause = cause;
@@ -42,6 +56,19 @@ final class AssertionErrorWithFacts extends AssertionError implements ErrorWithF
         } catch (IllegalStateException alreadyInitializedBecauseOfHarmonyBug) {
             // See Truth.SimpleAssertionError.
         }
+        if (fullStackTrace) {
+            super.fillInStackTrace();
+        } else {
+            setStackTrace(callSite());
+        }
+        initialized = true;
+    }
+
+    @Override
+    @SuppressWarnings("UnsynchronizedOverridesSynchronized")
+    public Throwable fillInStackTrace() {
+        // The superclass constructor calls this before we know which stack trace we want.
+        return initialized ? super.fillInStackTrace() : this;
     }
 
     @Override
@@ -50,6 +77,16 @@ final class AssertionErrorWithFacts extends AssertionError implements ErrorWithF
         return cause;
     }
 
+    @Override
+    public String getMessage() {
+        String result = message;
+        if (result == null) {
+            result = makeMessage(messages, facts);
+            message = result;
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         return getLocalizedMessage();
@@ -28,18 +28,44 @@ import static java.util.Objects.requireNonNull;
  * of structured {@link Fact} instances and other string messages.
  */
 final class ComparisonFailureWithFacts extends PlatformComparisonFailure implements ErrorWithFacts {
+    private final List<String> messages;
     private final List<Fact> facts;
 
+    // Rendered on first use, because many failures are caught and discarded without a look at it.
+    // Benign race: at worst, the message is rendered more than once.
+    private String message;
+
     ComparisonFailureWithFacts(
             List<String> messages,
             List<Fact> facts,
             String expected,
             String actual,
             Throwable cause) {
-        super(makeMessage(messages, facts), requireNonNull(expected), requireNonNull(actual), cause);
+        this(messages, facts, expected, actual, cause, true);
+    }
+
+    ComparisonFailureWithFacts(
+            List<String> messages,
+            List<Fact> facts,
+            String expected,
+            String actual,
+            Throwable cause,
+            boolean fullStackTrace) {
+        super(requireNonNull(expected), requireNonNull(actual), cause, fullStackTrace);
+        this.messages = requireNonNull(messages);
         this.facts = requireNonNull(facts);
     }
 
+    @Override
+    public String getMessage() {
+        String result = message;
+        if (result == null) {
+            result = makeMessage(messages, facts);
+            message = result;
+        }
+        return result;
+    }
+
     @Override
     public List<Fact> facts() {
         return facts;
@@ -21,6 +21,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static io.jbock.common.truth.Fact.fact;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * Contains part of the code responsible for creating a JUnit {@code ComparisonFailure} (if
@@ -59,12 +60,20 @@ final class ComparisonFailures {
      * or end.
      */
     static List<Fact> formatExpectedAndActual(String expected, String actual) {
+        return formatExpectedAndActual(expected, actual, DiffBudget.DEFAULT);
+    }
+
+    /**
+     * Like {@link #formatExpectedAndActual(String, String)}, but falls back to the facts with the
+     * expected and actual values as soon as computing the diff would exceed the given budget.
+     */
+    static List<Fact> formatExpectedAndActual(String expected, String actual, DiffBudget budget) {
         List<Fact> result;
 
         // TODO(cpovirk): Call attention to differences in trailing whitespace.
         // TODO(cpovirk): And changes in the *kind* of whitespace characters in the middle of the line.
 
-        result = Platform.makeDiff(expected, actual);
+        result = Platform.makeDiff(expected, actual, budget);
         if (result != null) {
             return result;
         }
@@ -72,6 +81,37 @@ final class ComparisonFailures {
         return List.of(fact("expected", expected), fact("but was", actual));
     }
 
+    /**
+     * Limits the work spent on a diff of the expected and actual values. A diff of two large values
+     * which differ in many places takes long to compute, and is too long to be useful anyway.
+     *
+     * <p>The default limits can be changed with the system properties {@value #MAX_LINES_PROPERTY},
+     * {@value #MAX_EDITS_PROPERTY} and {@value #TIMEOUT_MILLIS_PROPERTY}.
+     */
+    static final class DiffBudget {
+        static final String MAX_LINES_PROPERTY = "io.jbock.common.truth.diff.maxLines";
+        static final String MAX_EDITS_PROPERTY = "io.jbock.common.truth.diff.maxEdits";
+        static final String TIMEOUT_MILLIS_PROPERTY = "io.jbock.common.truth.diff.timeoutMillis";
+
+        static final DiffBudget DEFAULT =
+                new DiffBudget(
+                        Integer.getInteger(MAX_LINES_PROPERTY, 1_000_000),
+                        Integer.getInteger(MAX_EDITS_PROPERTY, 10_000),
+                        MILLISECONDS.toNanos(Long.getLong(TIMEOUT_MILLIS_PROPERTY, 2_000)));
+
+        // The largest number of lines of the expected or actual value for which we compute a diff.
+        final int maxLines;
+        // The largest number of added and removed lines in a diff.
+        final int maxEdits;
+        final long timeoutNanos;
+
+        DiffBudget(int maxLines, int maxEdits, long timeoutNanos) {
+            this.maxLines = maxLines;
+            this.maxEdits = maxEdits;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+
     private ComparisonFailures() {
     }
 }
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.OptionalDouble;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -308,6 +309,11 @@ public abstract class Correspondence<A, E> {
         public String toString() {
             return "is a finite number within " + tolerance + " of";
         }
+
+        @Override
+        OptionalDouble numericTolerance() {
+            return OptionalDouble.of(tolerance);
+        }
     }
 
     /**
@@ -432,6 +438,112 @@ public abstract class Correspondence<A, E> {
         boolean isEquality() {
             return delegate.isEquality();
         }
+
+        @Override
+        Bucketing<? super A, ? super E> bucketing() {
+            return delegate.bucketing();
+        }
+
+        @Override
+        OptionalDouble numericTolerance() {
+            return delegate.numericTolerance();
+        }
+    }
+
+    /**
+     * Returns a new correspondence which is like this one, except that it declares a key for the
+     * actual and for the expected elements, such that an actual element can only correspond to an
+     * expected element with an equal key. Assertions which look for all the corresponding pairs of
+     * elements, such as {@link IterableSubject.UsingCorrespondence#containsExactlyElementsIn}, then
+     * only compare elements whose keys are equal, instead of comparing every actual element with
+     * every expected element.
+     *
+     * <p>It is the caller's responsibility to ensure that the keys are consistent with the
+     * correspondence: if {@link #compare} returns {@code true} for a pair of elements, then their
+     * keys must be equal according to {@link Object#equals} (they may be null). Otherwise,
+     * assertions may fail to find corresponding elements. If a key function throws, the element is
+     * compared with every element on the other side.
+     *
+     * <p>Example:
+     *
+     * <pre>{@code
+     * class MyRecordTestHelper {
+     *   static final Correspondence<MyRecord, MyRecord> EQUIVALENCE =
+     *       Correspondence.from(MyRecordTestHelper::recordsEquivalent, "is equivalent to")
+     *           .bucketedBy(MyRecord::getId, MyRecord::getId);
+     *   static boolean recordsEquivalent(MyRecord actual, MyRecord expected) {
+     *     // code to check whether records with the same ID should be considered equivalent
+     *   }
+     * }
+     * }</pre>
+     *
+     * @param actualKey a {@link Function} taking an actual element and returning its key
+     * @param expectedKey a {@link Function} taking an expected element and returning its key
+     */
+    public Correspondence<A, E> bucketedBy(
+            Function<? super A, ?> actualKey, Function<? super E, ?> expectedKey) {
+        return new Bucketed<>(this, new Bucketing<>(actualKey, expectedKey));
+    }
+
+    /** The key functions of a correspondence created by {@link #bucketedBy}. */
+    static final class Bucketing<A, E> {
+
+        private final Function<? super A, ?> actualKey;
+        private final Function<? super E, ?> expectedKey;
+
+        private Bucketing(Function<? super A, ?> actualKey, Function<? super E, ?> expectedKey) {
+            this.actualKey = requireNonNull(actualKey);
+            this.expectedKey = requireNonNull(expectedKey);
+        }
+
+        Object actualKey(A actual) {
+            return actualKey.apply(actual);
+        }
+
+        Object expectedKey(E expected) {
+            return expectedKey.apply(expected);
+        }
+    }
+
+    private static final class Bucketed<A, E> extends Correspondence<A, E> {
+
+        private final Correspondence<A, E> delegate;
+        private final Bucketing<A, E> bucketing;
+
+        private Bucketed(Correspondence<A, E> delegate, Bucketing<A, E> bucketing) {
+            this.delegate = requireNonNull(delegate);
+            this.bucketing = bucketing;
+        }
+
+        @Override
+        public boolean compare(A actual, E expected) {
+            return delegate.compare(actual, expected);
+        }
+
+        @Override
+        public String formatDiff(A actual, E expected) {
+            return delegate.formatDiff(actual, expected);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+
+        @Override
+        boolean isEquality() {
+            return delegate.isEquality();
+        }
+
+        @Override
+        Bucketing<? super A, ? super E> bucketing() {
+            return bucketing;
+        }
+
+        @Override
+        OptionalDouble numericTolerance() {
+            return delegate.numericTolerance();
+        }
     }
 
     /**
@@ -787,6 +899,23 @@ public abstract class Correspondence<A, E> {
         return false;
     }
 
+    /**
+     * Returns the key functions declared by {@link #bucketedBy}, or null if this correspondence
+     * does not declare any.
+     */
+    Bucketing<? super A, ? super E> bucketing() {
+        return null;
+    }
+
+    /**
+     * Returns the tolerance if this is a tolerance correspondence, i.e. one returned by {@link
+     * #tolerance} or one whose {@link #compare} delegates to one returned by {@link #tolerance}, and
+     * the empty value otherwise.
+     */
+    OptionalDouble numericTolerance() {
+        return OptionalDouble.empty();
+    }
+
     /**
      * Returns a list of {@link Fact} instance describing how this correspondence compares elements of
      * an iterable. There will be one "testing whether" fact, unless this {@link #isEquality is an
@@ -15,8 +15,13 @@
  */
 package io.jbock.common.truth;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,12 +30,24 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 /**
- * A custom implementation of the diff algorithm based on the solution described at
- * https://en.wikipedia.org/wiki/Longest_common_subsequence_problem
+ * A custom implementation of the diff algorithm described in Eugene W. Myers, "An O(ND) Difference
+ * Algorithm and Its Variations", Algorithmica 1 (1986). Time and memory are proportional to the
+ * size of the input times the number of differing lines, rather than to the product of the sizes
+ * of the inputs.
  *
  * @author Yun Peng (pcloudy@google.com)
  */
 final class DiffUtils {
+    // Beyond this many edits, we no longer keep the full trace of the greedy search, and split the
+    // problem at the middle of a shortest edit script instead.
+    private static final int MAX_TRACED_EDITS = 2048;
+    // Marks a diagonal on which no point has been reached yet.
+    private static final int UNREACHED = -1;
+    // Changed lines of at least this length are shown with an intraline diff.
+    private static final int INTRALINE_MIN_LENGTH = 200;
+    // The number of unchanged characters shown next to each change in an intraline diff.
+    private static final int INTRALINE_CONTEXT = 20;
+
     // A list of unique strings appeared in compared texts.
     // The index of each string is its incremental Id.
     private final List<String> stringList = new ArrayList<>();
@@ -38,13 +55,25 @@ final class DiffUtils {
     private final Map<String, Integer> stringToId = new HashMap<>();
     private int[] original;
     private int[] revised;
-    // lcs[i][j] is the length of the longest common sequence of original[1..i] and revised[1..j].
-    private int[][] lcs;
     private final List<Character> unifiedDiffType = new ArrayList<>();
     private final List<Integer> unifiedDiffContentId = new ArrayList<>();
     private final List<String> reducedUnifiedDiff = new ArrayList<>();
     private int offsetHead = 0;
     private int offsetTail = 0;
+    // The largest number of edits, and the time in nanoseconds, we may spend on the diff.
+    private final int editBudget;
+    private final long timeBudgetNanos;
+    private final long startNanos = System.nanoTime();
+    private boolean budgetExceeded = false;
+    // The part of the edit budget which the intraline diffs may still spend.
+    private int intralineEditBudget;
+    // The number of equal lines at the start of the input which were never read into memory.
+    private int skippedLines = 0;
+
+    private DiffUtils(int editBudget, long timeBudgetNanos) {
+        this.editBudget = editBudget;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
 
     private List<String> diff(
             List<String> originalLines, List<String> revisedLines, int contextSize) {
@@ -52,28 +81,21 @@ final class DiffUtils {
         originalLines = originalLines.subList(offsetHead, originalLines.size() - offsetTail);
         revisedLines = revisedLines.subList(offsetHead, revisedLines.size() - offsetTail);
 
-        original = new int[originalLines.size() + 1];
-        revised = new int[revisedLines.size() + 1];
-        lcs = new int[originalLines.size() + 1][revisedLines.size() + 1];
+        original = new int[originalLines.size()];
+        revised = new int[revisedLines.size()];
 
         for (int i = 0; i < originalLines.size(); i++) {
-            original[i + 1] = getIdByLine(originalLines.get(i));
+            original[i] = getIdByLine(originalLines.get(i));
         }
         for (int i = 0; i < revisedLines.size(); i++) {
-            revised[i + 1] = getIdByLine(revisedLines.get(i));
+            revised[i] = getIdByLine(revisedLines.get(i));
         }
 
-        for (int i = 1; i < original.length; i++) {
-            for (int j = 1; j < revised.length; j++) {
-                if (original[i] == revised[j]) {
-                    lcs[i][j] = lcs[i - 1][j - 1] + 1;
-                } else {
-                    lcs[i][j] = max(lcs[i][j - 1], lcs[i - 1][j]);
-                }
-            }
+        calcUnifiedDiff(0, original.length, 0, revised.length);
+        if (budgetExceeded) {
+            return null;
         }
-
-        calcUnifiedDiff(originalLines.size(), revisedLines.size());
+        addIntralineDiffs();
 
         calcReducedUnifiedDiff(contextSize);
 
@@ -116,31 +138,412 @@ final class DiffUtils {
         offsetTail = tail;
     }
 
-    private void calcUnifiedDiff(int i, int j) {
-        while (i > 0 || j > 0) {
-            if (i > 0
-                    && j > 0
-                    && original[i] == revised[j]
-                    // Make sure the diff output is identical to the diff command line tool when there are
-                    // multiple solutions.
-                    && lcs[i - 1][j - 1] + 1 > lcs[i - 1][j]
-                    && lcs[i - 1][j - 1] + 1 > lcs[i][j - 1]) {
-                unifiedDiffType.add(' ');
+    /**
+     * Appends the diff lines turning {@code original[originalStart, originalEnd)} into
+     * {@code revised[revisedStart, revisedEnd)} to {@code unifiedDiffType} and
+     * {@code unifiedDiffContentId}. Stops early if the budget is exceeded.
+     */
+    private void calcUnifiedDiff(
+            int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        if (originalStart == originalEnd || revisedStart == revisedEnd) {
+            if (exceedsBudget(originalEnd - originalStart + revisedEnd - revisedStart)) {
+                return;
+            }
+            for (int i = originalStart; i < originalEnd; i++) {
+                unifiedDiffType.add('-');
                 unifiedDiffContentId.add(original[i]);
-                i--;
-                j--;
-            } else if (j > 0 && (i == 0 || lcs[i][j - 1] >= lcs[i - 1][j])) {
+            }
+            for (int j = revisedStart; j < revisedEnd; j++) {
                 unifiedDiffType.add('+');
                 unifiedDiffContentId.add(revised[j]);
-                j--;
-            } else if (i > 0 && (j == 0 || lcs[i][j - 1] < lcs[i - 1][j])) {
-                unifiedDiffType.add('-');
-                unifiedDiffContentId.add(original[i]);
-                i--;
             }
+            return;
+        }
+        List<int[]> trace = traceEdits(originalStart, originalEnd, revisedStart, revisedEnd);
+        if (trace != null) {
+            appendTracedEdits(trace, originalStart, originalEnd, revisedStart, revisedEnd);
+            return;
+        }
+        if (budgetExceeded) {
+            return;
+        }
+        int[] middle = findMiddle(originalStart, originalEnd, revisedStart, revisedEnd);
+        if (middle == null) {
+            return;
+        }
+        calcUnifiedDiff(originalStart, middle[0], revisedStart, middle[1]);
+        calcUnifiedDiff(middle[0], originalEnd, middle[1], revisedEnd);
+    }
+
+    /**
+     * Performs the greedy search for the shortest edit script turning
+     * {@code original[originalStart, originalEnd)} into {@code revised[revisedStart, revisedEnd)}.
+     * We use the coordinates of the edit graph relative to the start, where {@code x} counts the
+     * original lines and {@code y} the revised lines, and number the diagonals by
+     * {@code k = x - y}. Round {@code d} finds the furthest reaching point on each diagonal which
+     * can be reached with {@code d} edits.
+     *
+     * <p>Returns the furthest reaching points of each round before the last, which is the round in
+     * which the end is reached. Element {@code d} of the list holds the point on diagonal {@code k}
+     * at index {@code (k + d) / 2}, as its {@code x} coordinate or {@link #UNREACHED}. Returns null
+     * if the end cannot be reached within {@link #MAX_TRACED_EDITS} edits, or if the budget is
+     * exceeded.
+     */
+    private List<int[]> traceEdits(
+            int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        int n = originalEnd - originalStart;
+        int m = revisedEnd - revisedStart;
+        int maxEdits = min(n + m, MAX_TRACED_EDITS);
+        int offset = maxEdits + 1;
+        int[] furthest = new int[2 * maxEdits + 3];
+        Arrays.fill(furthest, UNREACHED);
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= maxEdits; d++) {
+            if (exceedsBudget(d)) {
+                return null;
+            }
+            for (int k = -d; k <= d; k += 2) {
+                if (k < -m || k > n) {
+                    continue;
+                }
+                int x = nextPoint(furthest, offset, k, d, n, m);
+                if (x != UNREACHED) {
+                    int y = x - k;
+                    while (x < n && y < m
+                            && original[originalStart + x] == revised[revisedStart + y]) {
+                        x++;
+                        y++;
+                    }
+                    if (x == n && y == m) {
+                        return trace;
+                    }
+                }
+                furthest[offset + k] = x;
+            }
+            int[] round = new int[d + 1];
+            for (int k = -d; k <= d; k += 2) {
+                round[(k + d) / 2] = furthest[offset + k];
+            }
+            trace.add(round);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the point on diagonal {@code k} from which round {@code d} of the greedy search
+     * continues, before following any equal lines, as its {@code x} coordinate. This is one edit
+     * away from the furthest point reached in the previous round on one of the neighbouring
+     * diagonals:
+     * either a deletion from diagonal {@code k - 1} or an insertion from diagonal {@code k + 1},
+     * whichever gets further while staying inside the edit graph. Returns {@link #UNREACHED} if
+     * neither is possible.
+     */
+    private static int nextPoint(int[] furthest, int offset, int k, int d, int n, int m) {
+        if (d == 0) {
+            return 0;
+        }
+        int x = UNREACHED;
+        int fromAbove = furthest[offset + k + 1];
+        if (fromAbove != UNREACHED && fromAbove - k <= m) {
+            x = fromAbove;
+        }
+        int fromLeft = furthest[offset + k - 1];
+        if (fromLeft != UNREACHED && fromLeft + 1 <= n) {
+            x = max(x, fromLeft + 1);
+        }
+        return x;
+    }
+
+    /**
+     * Appends the edit script found by {@link #traceEdits}. We walk back from the end, and at each
+     * point prefer an insertion, then a deletion, then an equal line, among the steps which stay on
+     * a shortest path. This is the same preference as the {@code diff} command line tool, so the
+     * output is identical to it when there are multiple solutions.
+     *
+     * <p>A point on diagonal {@code k} can be reached with at most {@code d} edits exactly if it is
+     * no further along the diagonal than the furthest point reached in round {@code d}, so the
+     * trace tells us which steps stay on a shortest path.
+     */
+    private void appendTracedEdits(
+            List<int[]> trace,
+            int originalStart,
+            int originalEnd,
+            int revisedStart,
+            int revisedEnd) {
+        int x = originalEnd - originalStart;
+        int y = revisedEnd - revisedStart;
+        int d = trace.size();
+        char[] types = new char[x + y];
+        int[] contentIds = new int[x + y];
+        int count = 0;
+        while (x > 0 || y > 0) {
+            int k = x - y;
+            if (y > 0 && isReached(trace, d - 1, k + 1, x)) {
+                types[count] = '+';
+                contentIds[count++] = revised[revisedStart + y - 1];
+                y--;
+                d--;
+            } else if (x > 0 && isReached(trace, d - 1, k - 1, x - 1)) {
+                types[count] = '-';
+                contentIds[count++] = original[originalStart + x - 1];
+                x--;
+                d--;
+            } else {
+                types[count] = ' ';
+                contentIds[count++] = original[originalStart + x - 1];
+                x--;
+                y--;
+            }
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            unifiedDiffType.add(types[i]);
+            unifiedDiffContentId.add(contentIds[i]);
         }
-        Collections.reverse(unifiedDiffType);
-        Collections.reverse(unifiedDiffContentId);
+    }
+
+    /** Returns whether point {@code x} on diagonal {@code k} takes at most {@code d} edits. */
+    private static boolean isReached(List<int[]> trace, int d, int k, int x) {
+        return d >= 0 && -d <= k && k <= d && trace.get(d)[(k + d) / 2] >= x;
+    }
+
+    /**
+     * Returns a point on a shortest path through the edit graph of
+     * {@code original[originalStart, originalEnd)} and {@code revised[revisedStart, revisedEnd)},
+     * as the absolute indexes {@code {i, j}} of the original and revised lines at which the problem
+     * can be split. This runs the greedy search from both ends at once until they meet, which
+     * takes memory linear in the number of edits. Only to be called when the shortest path has at
+     * least two edits, so that the point is strictly inside the edit graph. Returns null if the
+     * budget is exceeded.
+     */
+    private int[] findMiddle(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        int n = originalEnd - originalStart;
+        int m = revisedEnd - revisedStart;
+        int delta = n - m;
+        int maxEdits = (n + m + 1) / 2;
+        int offset = maxEdits + 1;
+        // The backward search works on the reversed lines, so its diagonal k corresponds to the
+        // forward diagonal delta - k.
+        int[] forward = new int[2 * maxEdits + 3];
+        int[] backward = new int[2 * maxEdits + 3];
+        Arrays.fill(forward, UNREACHED);
+        Arrays.fill(backward, UNREACHED);
+        for (int d = 0; d <= maxEdits; d++) {
+            // The searches have not met in the previous round, so there are at least 2d - 1 edits.
+            if (exceedsBudget(2 * d - 1)) {
+                return null;
+            }
+            for (int k = -d; k <= d; k += 2) {
+                if (k < -m || k > n) {
+                    continue;
+                }
+                int x = nextPoint(forward, offset, k, d, n, m);
+                if (x == UNREACHED) {
+                    continue;
+                }
+                int y = x - k;
+                while (x < n && y < m && original[originalStart + x] == revised[revisedStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int backwardK = delta - k;
+                if (delta % 2 != 0
+                        && -d < backwardK && backwardK < d
+                        && backward[offset + backwardK] != UNREACHED
+                        && x + backward[offset + backwardK] >= n) {
+                    return new int[] {originalStart + x, revisedStart + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                if (k < -m || k > n) {
+                    continue;
+                }
+                int x = nextPoint(backward, offset, k, d, n, m);
+                if (x == UNREACHED) {
+                    continue;
+                }
+                int y = x - k;
+                while (x < n && y < m
+                        && original[originalEnd - 1 - x] == revised[revisedEnd - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (delta % 2 == 0
+                        && -d <= forwardK && forwardK <= d
+                        && forward[offset + forwardK] != UNREACHED
+                        && forward[offset + forwardK] + x >= n) {
+                    return new int[] {originalEnd - x, revisedEnd - y};
+                }
+            }
+        }
+        throw new AssertionError("the searches from both ends must meet");
+    }
+
+    /**
+     * Replaces pairs of changed lines with a single line starting with {@code '~'}, which shows
+     * only the changed words of the line, as {@code [-removed-]{+added+}}, and a few characters
+     * around them. We only do this for long lines, where the intraline diff is shorter than the
+     * two lines, and only if a block of removed lines is followed by a block of added lines of the
+     * same size, so that the lines can be paired in order.
+     */
+    private void addIntralineDiffs() {
+        intralineEditBudget = editBudget - countEdits(unifiedDiffType);
+        List<Character> types = new ArrayList<>();
+        List<Integer> contentIds = new ArrayList<>();
+        int next = 0;
+        while (next < unifiedDiffType.size()) {
+            int removedEnd = next;
+            while (removedEnd < unifiedDiffType.size() && unifiedDiffType.get(removedEnd) == '-') {
+                removedEnd++;
+            }
+            int addedEnd = removedEnd;
+            while (addedEnd < unifiedDiffType.size() && unifiedDiffType.get(addedEnd) == '+') {
+                addedEnd++;
+            }
+            int pairs = removedEnd - next;
+            String[] intralineDiffs = new String[pairs];
+            boolean anyIntralineDiff = false;
+            if (pairs > 0 && addedEnd - removedEnd == pairs) {
+                for (int i = 0; i < pairs; i++) {
+                    intralineDiffs[i] =
+                            intralineDiff(
+                                    stringList.get(unifiedDiffContentId.get(next + i)),
+                                    stringList.get(unifiedDiffContentId.get(removedEnd + i)));
+                    anyIntralineDiff |= intralineDiffs[i] != null;
+                }
+            }
+            if (!anyIntralineDiff) {
+                int end = max(addedEnd, next + 1);
+                types.addAll(unifiedDiffType.subList(next, end));
+                contentIds.addAll(unifiedDiffContentId.subList(next, end));
+                next = end;
+                continue;
+            }
+            for (int i = 0; i < pairs; i++) {
+                if (intralineDiffs[i] != null) {
+                    types.add('~');
+                    contentIds.add(getIdByLine(intralineDiffs[i]));
+                } else {
+                    types.add('-');
+                    contentIds.add(unifiedDiffContentId.get(next + i));
+                    types.add('+');
+                    contentIds.add(unifiedDiffContentId.get(removedEnd + i));
+                }
+            }
+            next = addedEnd;
+        }
+        unifiedDiffType.clear();
+        unifiedDiffType.addAll(types);
+        unifiedDiffContentId.clear();
+        unifiedDiffContentId.addAll(contentIds);
+    }
+
+    /**
+     * Returns the intraline diff of the given lines, or null if it should not be shown. The words
+     * of the lines are compared with the same algorithm as the lines of the input, using the ids of
+     * {@link #getIdByLine}. All the intraline diffs share the edits which the line diff left of the
+     * edit budget, and the remaining time. Once a word diff exceeds what is left, no more intraline
+     * diffs are computed.
+     */
+    private String intralineDiff(String originalLine, String revisedLine) {
+        if (originalLine.length() < INTRALINE_MIN_LENGTH
+                && revisedLine.length() < INTRALINE_MIN_LENGTH) {
+            return null;
+        }
+        DiffUtils words =
+                new DiffUtils(
+                        intralineEditBudget, timeBudgetNanos - (System.nanoTime() - startNanos));
+        words.original = tokenIds(originalLine);
+        words.revised = tokenIds(revisedLine);
+        words.calcUnifiedDiff(0, words.original.length, 0, words.revised.length);
+        if (words.budgetExceeded) {
+            intralineEditBudget = 0;
+            return null;
+        }
+        intralineEditBudget -= countEdits(words.unifiedDiffType);
+        StringBuilder result = new StringBuilder();
+        StringBuilder unchanged = new StringBuilder();
+        StringBuilder removed = new StringBuilder();
+        StringBuilder added = new StringBuilder();
+        int next = 0;
+        int size = words.unifiedDiffType.size();
+        while (next < size) {
+            int start = next;
+            while (next < size && words.unifiedDiffType.get(next) == ' ') {
+                unchanged.append(stringList.get(words.unifiedDiffContentId.get(next++)));
+            }
+            if (unchanged.length() > 0) {
+                appendContext(result, unchanged, start == 0, next == size);
+                unchanged.setLength(0);
+            }
+            while (next < size && words.unifiedDiffType.get(next) != ' ') {
+                (words.unifiedDiffType.get(next) == '-' ? removed : added)
+                        .append(stringList.get(words.unifiedDiffContentId.get(next++)));
+            }
+            if (removed.length() > 0) {
+                result.append("[-").append(removed).append("-]");
+                removed.setLength(0);
+            }
+            if (added.length() > 0) {
+                result.append("{+").append(added).append("+}");
+                added.setLength(0);
+            }
+        }
+        if (result.length() >= originalLine.length() + revisedLine.length()) {
+            return null;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Appends the given unchanged text of an intraline diff, keeping only {@link
+     * #INTRALINE_CONTEXT} characters next to each change.
+     */
+    private static void appendContext(
+            StringBuilder result, CharSequence text, boolean startOfLine, boolean endOfLine) {
+        int head = startOfLine ? 0 : INTRALINE_CONTEXT;
+        int tail = endOfLine ? 0 : INTRALINE_CONTEXT;
+        if (text.length() <= head + tail + 1) {
+            result.append(text);
+            return;
+        }
+        result.append(text, 0, head)
+                .append('…')
+                .append(text, text.length() - tail, text.length());
+    }
+
+    /**
+     * Splits the given line into words, which are runs of letters and digits, and single other
+     * characters, and returns their ids.
+     */
+    /** Returns the number of removed and added lines, or words, in the given diff types. */
+    private static int countEdits(List<Character> types) {
+        int edits = 0;
+        for (char type : types) {
+            if (type != ' ') {
+                edits++;
+            }
+        }
+        return edits;
+    }
+
+    private int[] tokenIds(String line) {
+        List<Integer> ids = new ArrayList<>();
+        int start = 0;
+        while (start < line.length()) {
+            int codePoint = line.codePointAt(start);
+            int end = start + Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                while (end < line.length() && Character.isLetterOrDigit(line.codePointAt(end))) {
+                    end += Character.charCount(line.codePointAt(end));
+                }
+            }
+            ids.add(getIdByLine(line.substring(start, end)));
+            start = end;
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
     }
 
     /**
@@ -152,8 +555,8 @@ final class DiffUtils {
         // The index of the next line we're going to process in fullDiff.
         int next = 0;
         // The number of lines in original/revised file after the diff lines we've processed.
-        int lineNumOrigin = offsetHead;
-        int lineNumRevised = offsetHead;
+        int lineNumOrigin = skippedLines + offsetHead;
+        int lineNumRevised = skippedLines + offsetHead;
         while (next < unifiedDiffType.size()) {
             // The start and end index of the current block in fullDiff
             int start;
@@ -193,8 +596,11 @@ final class DiffUtils {
                     end = next;
                     if (unifiedDiffType.get(next).equals('-')) {
                         lineNumOrigin++;
+                    } else if (unifiedDiffType.get(next).equals('+')) {
+                        lineNumRevised++;
                     } else {
-                        // line starts with "+"
+                        // line starts with "~", an intraline diff of a removed and an added line
+                        lineNumOrigin++;
                         lineNumRevised++;
                     }
                 }
@@ -227,8 +633,138 @@ final class DiffUtils {
         }
     }
 
+    /**
+     * Records whether the diff needs more than the given number of edits, or has taken more time
+     * than the budget allows.
+     */
+    private boolean exceedsBudget(int edits) {
+        if (edits > editBudget || System.nanoTime() - startNanos > timeBudgetNanos) {
+            budgetExceeded = true;
+        }
+        return budgetExceeded;
+    }
+
     static List<String> generateUnifiedDiff(
             List<String> original, List<String> revised, int contextSize) {
-        return new DiffUtils().diff(original, revised, contextSize);
+        return generateUnifiedDiff(
+                original, revised, contextSize, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #generateUnifiedDiff(List, List, int)}, but gives up and returns null as soon as
+     * it is clear that the diff has more than {@code editBudget} added and removed lines, or once
+     * it has run for longer than {@code timeBudgetNanos}.
+     */
+    static List<String> generateUnifiedDiff(
+            List<String> original,
+            List<String> revised,
+            int contextSize,
+            int editBudget,
+            long timeBudgetNanos) {
+        return new DiffUtils(editBudget, timeBudgetNanos).diff(original, revised, contextSize);
+    }
+
+    /**
+     * Like {@link #generateUnifiedDiff(List, List, int, int, long)}, but reads the lines from the
+     * given files, and keeps neither their common prefix nor their common suffix in memory. The
+     * files are read twice: once to find the common prefix and to hash the remaining lines, which
+     * gives us the common suffix, and once more to read only the lines in between, along with their
+     * context. Returns null if more than {@code maxLines} lines of either file lie between the common
+     * prefix and suffix, or if the diff exceeds the budget.
+     */
+    static List<String> generateUnifiedDiff(
+            Path original,
+            Path revised,
+            Charset charset,
+            int contextSize,
+            int maxLines,
+            int editBudget,
+            long timeBudgetNanos)
+            throws IOException {
+        int prefix = 0;
+        long[] originalHashes = new long[16];
+        long[] revisedHashes = new long[16];
+        int originalCount = 0;
+        int revisedCount = 0;
+        try (BufferedReader originalReader = Files.newBufferedReader(original, charset);
+                BufferedReader revisedReader = Files.newBufferedReader(revised, charset)) {
+            while (true) {
+                String originalLine = originalReader.readLine();
+                String revisedLine = revisedReader.readLine();
+                if (originalLine == null && revisedLine == null) {
+                    return new ArrayList<>();
+                }
+                if (originalLine == null || !originalLine.equals(revisedLine)) {
+                    if (originalLine != null) {
+                        originalHashes[originalCount++] = hash(originalLine);
+                    }
+                    if (revisedLine != null) {
+                        revisedHashes[revisedCount++] = hash(revisedLine);
+                    }
+                    break;
+                }
+                prefix++;
+            }
+            for (String line; (line = originalReader.readLine()) != null; originalCount++) {
+                if (originalCount == originalHashes.length) {
+                    originalHashes = Arrays.copyOf(originalHashes, 2 * originalCount);
+                }
+                originalHashes[originalCount] = hash(line);
+            }
+            for (String line; (line = revisedReader.readLine()) != null; revisedCount++) {
+                if (revisedCount == revisedHashes.length) {
+                    revisedHashes = Arrays.copyOf(revisedHashes, 2 * revisedCount);
+                }
+                revisedHashes[revisedCount] = hash(line);
+            }
+        }
+        int suffix = 0;
+        while (suffix < min(originalCount, revisedCount)
+                && originalHashes[originalCount - 1 - suffix]
+                        == revisedHashes[revisedCount - 1 - suffix]) {
+            suffix++;
+        }
+        int trailingContext = min(suffix, contextSize);
+        if (originalCount - suffix > maxLines || revisedCount - suffix > maxLines) {
+            return null;
+        }
+        int start = max(prefix - contextSize, 0);
+        List<String> originalLines = new ArrayList<>();
+        List<String> revisedLines = new ArrayList<>();
+        try (BufferedReader originalReader = Files.newBufferedReader(original, charset);
+                BufferedReader revisedReader = Files.newBufferedReader(revised, charset)) {
+            for (int i = 0; i < start; i++) {
+                originalReader.readLine();
+                revisedReader.readLine();
+            }
+            int context = prefix - start + trailingContext;
+            addLines(originalReader, originalLines, originalCount - suffix + context);
+            addLines(revisedReader, revisedLines, revisedCount - suffix + context);
+            // The hashes of the remaining lines are equal, but that doesn't prove the lines are.
+            for (String line; (line = originalReader.readLine()) != null; ) {
+                if (!line.equals(revisedReader.readLine())) {
+                    return null;
+                }
+            }
+        }
+        DiffUtils diffUtils = new DiffUtils(editBudget, timeBudgetNanos);
+        diffUtils.skippedLines = start;
+        return diffUtils.diff(originalLines, revisedLines, contextSize);
+    }
+
+    private static void addLines(BufferedReader reader, List<String> lines, int count)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            lines.add(reader.readLine());
+        }
+    }
+
+    /** A 64-bit polynomial hash of the given line, with fewer collisions than {@code hashCode}. */
+    private static long hash(String line) {
+        long hash = 1;
+        for (int i = 0; i < line.length(); i++) {
+            hash = 1_000_003 * hash + line.charAt(i);
+        }
+        return hash;
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A list of elements, indexed by value, from which elements equal to a given one can be taken, one
+ * at a time. This replaces searching and removing elements from a list, which takes quadratic time
+ * for large inputs, with hash lookups, which take expected linear time overall.
+ *
+ * <p>Each value keeps the ascending positions at which it occurs. Elements are taken with {@link
+ * #take}, relative to a cursor. The caller may only move the cursor forward, and must move it past
+ * each element taken at or after it. Then each lookup takes amortized constant time.
+ *
+ * <p>The index relies on {@code hashCode} being consistent with {@code equals}. For elements of a
+ * class which overrides {@code equals} but inherits {@code hashCode}, we can't rely on that, so
+ * they are searched linearly. The same goes for elements whose {@code hashCode} or {@code equals}
+ * throws when they are indexed or looked up.
+ */
+final class ElementIndex {
+
+    /** Whether a class declares {@code equals} below the class which declares {@code hashCode}. */
+    private static final ClassValue<Boolean> HASH_CODE_MAY_BE_INCONSISTENT =
+            new ClassValue<Boolean>() {
+                @Override
+                protected Boolean computeValue(Class<?> type) {
+                    try {
+                        Class<?> equalsDeclarer =
+                                type.getMethod("equals", Object.class).getDeclaringClass();
+                        Class<?> hashCodeDeclarer = type.getMethod("hashCode").getDeclaringClass();
+                        return equalsDeclarer != hashCodeDeclarer
+                                && hashCodeDeclarer.isAssignableFrom(equalsDeclarer);
+                    } catch (NoSuchMethodException e) {
+                        // Every class has public equals and hashCode methods.
+                        throw new AssertionError(e);
+                    }
+                }
+            };
+
+    private final Object[] elements;
+    private final boolean[] taken;
+    private final Map<Object, Positions> index = new HashMap<>();
+    // The positions of the elements which aren't in the index, in ascending order.
+    private final int[] unindexed;
+
+    ElementIndex(Iterable<?> elements) {
+        List<Object> list = new ArrayList<>();
+        elements.forEach(list::add);
+        this.elements = list.toArray();
+        this.taken = new boolean[this.elements.length];
+        int[] unindexed = new int[0];
+        int unindexedCount = 0;
+        for (int position = 0; position < this.elements.length; position++) {
+            Object element = this.elements[position];
+            if (hashCodeMayBeInconsistent(element) || !addToIndex(element, position)) {
+                if (unindexedCount == unindexed.length) {
+                    unindexed = Arrays.copyOf(unindexed, Math.max(4, unindexedCount * 2));
+                }
+                unindexed[unindexedCount++] = position;
+            }
+        }
+        this.unindexed = Arrays.copyOf(unindexed, unindexedCount);
+    }
+
+    /** Returns the number of elements, taken or not. */
+    int size() {
+        return elements.length;
+    }
+
+    /**
+     * Takes the first element at or after the cursor which is equal to the given one, or if there is
+     * none, the first one before the cursor. Elements are compared with {@code element.equals}, like
+     * {@link List#indexOf} does. Returns the position of the taken element, or -1 if there is no
+     * equal element left.
+     */
+    int take(Object element, int cursor) {
+        int atOrAfter = -1;
+        int before = -1;
+        boolean indexed = !hashCodeMayBeInconsistent(element);
+        Positions positions = null;
+        if (indexed) {
+            try {
+                positions = index.get(element);
+            } catch (RuntimeException e) {
+                // The element can't be looked up, so compare it with each element.
+                indexed = false;
+            }
+        }
+        if (!indexed) {
+            for (int position = 0; position < elements.length; position++) {
+                if (!taken[position] && Objects.equals(element, elements[position])) {
+                    if (position >= cursor) {
+                        atOrAfter = position;
+                        break;
+                    }
+                    if (before == -1) {
+                        before = position;
+                    }
+                }
+            }
+        } else {
+            if (positions != null) {
+                atOrAfter = positions.firstAtOrAfter(cursor);
+                before = positions.firstNotTakenBefore(cursor, taken);
+            }
+            for (int position : unindexed) {
+                if (!taken[position] && Objects.equals(element, elements[position])) {
+                    if (position >= cursor) {
+                        atOrAfter = atOrAfter == -1 ? position : Math.min(atOrAfter, position);
+                        break;
+                    }
+                    before = before == -1 ? position : Math.min(before, position);
+                }
+            }
+        }
+        int result = atOrAfter != -1 ? atOrAfter : before;
+        if (result != -1) {
+            taken[result] = true;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the element at the given position to the index. Returns false, and leaves the index
+     * unchanged, if the element's {@code hashCode} or {@code equals} throws.
+     */
+    private boolean addToIndex(Object element, int position) {
+        try {
+            index.computeIfAbsent(element, k -> new Positions()).add(position);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Returns the elements which haven't been taken, in their original order. */
+    List<Object> remaining() {
+        List<Object> result = new ArrayList<>();
+        for (int position = 0; position < elements.length; position++) {
+            if (!taken[position]) {
+                result.add(elements[position]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the object's {@code hashCode} may disagree with its {@code equals}, so that
+     * we shouldn't look it up in a hash table.
+     */
+    static boolean hashCodeMayBeInconsistent(Object object) {
+        return object != null && HASH_CODE_MAY_BE_INCONSISTENT.get(object.getClass());
+    }
+
+    /**
+     * The ascending positions of the elements that are equal to each other. Since the cursor only
+     * moves forward, and the elements at or after the cursor are never taken, both lookups take
+     * amortized constant time.
+     */
+    private static final class Positions {
+        private int[] positions = new int[1];
+        private int size;
+        // The index of the first position which may not be taken.
+        private int firstNotTaken;
+        // The index of the first position which may be at or after the cursor.
+        private int firstAfterCursor;
+
+        void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int firstAtOrAfter(int cursor) {
+            while (firstAfterCursor < size && positions[firstAfterCursor] < cursor) {
+                firstAfterCursor++;
+            }
+            return firstAfterCursor < size ? positions[firstAfterCursor] : -1;
+        }
+
+        int firstNotTakenBefore(int cursor, boolean[] taken) {
+            while (firstNotTaken < size && taken[positions[firstNotTaken]]) {
+                firstNotTaken++;
+            }
+            if (firstNotTaken < size && positions[firstNotTaken] < cursor) {
+                return positions[firstNotTaken];
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import io.jbock.common.truth.Truth.SimpleAssertionError;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link StandardSubjectBuilder} which records failures instead of throwing them, so that a
+ * single test can report many of them. Call {@link #verify} at the end to fail with all of the
+ * recorded failures, in the order in which they occurred:
+ *
+ * <pre>{@code
+ * Expect expect = Expect.create();
+ * for (Row row : rows) {
+ *   expect.that(row.name()).isNotEmpty();
+ *   expect.that(row.size()).isAtMost(MAX_SIZE);
+ * }
+ * expect.verify();
+ * }</pre>
+ *
+ * <p>An {@code Expect} may be shared by many threads, including virtual threads. Failures are
+ * appended to one of several buffers, chosen by the current thread, without taking a lock, so that
+ * threads which fail at the same time rarely contend. {@link #verify} merges the buffers. It sees
+ * all failures of the threads which have finished, for example those which were {@linkplain
+ * Thread#join joined}, and of the current thread.
+ */
+public final class Expect extends StandardSubjectBuilder {
+    /** Creates a new instance which has not recorded any failures. */
+    public static Expect create() {
+        return new Expect(new FailureGatherer());
+    }
+
+    private final FailureGatherer gatherer;
+
+    private Expect(FailureGatherer gatherer) {
+        super(FailureMetadata.forFailureStrategy(gatherer));
+        this.gatherer = gatherer;
+    }
+
+    /** Returns whether any failures have been recorded since the last call to {@link #verify}. */
+    public boolean hasFailures() {
+        return gatherer.hasFailures();
+    }
+
+    /**
+     * Throws an {@link AssertionError} that describes all failures recorded since the last call to
+     * this method, if there are any. Each failure is also attached as a {@linkplain
+     * Throwable#getSuppressed suppressed exception}, so its stack trace is not lost.
+     */
+    public void verify() {
+        List<AssertionError> failures = gatherer.drain();
+        if (failures.isEmpty()) {
+            return;
+        }
+        AssertionError error = SimpleAssertionError.create(describe(failures), null);
+        for (AssertionError failure : failures) {
+            error.addSuppressed(failure);
+        }
+        throw error;
+    }
+
+    private static String describe(List<AssertionError> failures) {
+        int size = failures.size();
+        StringBuilder message =
+                new StringBuilder()
+                        .append(size)
+                        .append(size > 1 ? " expectations" : " expectation")
+                        .append(" failed:\n");
+        int countLength = String.valueOf(size).length();
+        String indent = " ".repeat(countLength + 4);
+        for (int i = 0; i < size; i++) {
+            String count = String.valueOf(i + 1);
+            message.append("  ").append(" ".repeat(countLength - count.length())).append(count);
+            message.append(". ");
+            message.append(String.valueOf(failures.get(i).getMessage()).replace("\n", "\n" + indent));
+            message.append('\n');
+        }
+        return message.toString();
+    }
+
+    /**
+     * Records failures in striped buffers. A failure is numbered with a global counter, which only
+     * takes an atomic increment, and then appended to the lock-free queue of its stripe.
+     */
+    private static final class FailureGatherer implements FailureStrategy {
+        private final AtomicLong sequence = new AtomicLong();
+        private final List<Queue<RecordedFailure>> stripes;
+        private final int mask;
+
+        FailureGatherer() {
+            // A power of two, with a few stripes per processor to make collisions rare.
+            int size = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+            List<Queue<RecordedFailure>> stripes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                stripes.add(new ConcurrentLinkedQueue<>());
+            }
+            this.stripes = stripes;
+            this.mask = size - 1;
+        }
+
+        @Override
+        public void fail(AssertionError failure) {
+            RecordedFailure recorded = new RecordedFailure(sequence.getAndIncrement(), failure);
+            stripes.get(stripeIndex()).add(recorded);
+        }
+
+        private int stripeIndex() {
+            // Thread ids are often consecutive, so we spread them with a multiplicative hash.
+            long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+
+        boolean hasFailures() {
+            for (Queue<RecordedFailure> stripe : stripes) {
+                if (!stripe.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Removes the recorded failures and returns them in the order in which they occurred. */
+        List<AssertionError> drain() {
+            List<RecordedFailure> recorded = new ArrayList<>();
+            for (Queue<RecordedFailure> stripe : stripes) {
+                for (RecordedFailure failure; (failure = stripe.poll()) != null; ) {
+                    recorded.add(failure);
+                }
+            }
+            recorded.sort(Comparator.comparingLong(failure -> failure.sequence));
+            List<AssertionError> result = new ArrayList<>(recorded.size());
+            for (RecordedFailure failure : recorded) {
+                result.add(failure.failure);
+            }
+            return result;
+        }
+    }
+
+    private static final class RecordedFailure {
+        final long sequence;
+        final AssertionError failure;
+
+        RecordedFailure(long sequence, AssertionError failure) {
+            this.sequence = sequence;
+            this.failure = failure;
+        }
+    }
+}
@@ -41,6 +41,15 @@ public final class Fact {
         return new Fact(key, String.valueOf(value));
     }
 
+    /**
+     * Creates a fact like {@link #fact}, except that a very large value is shortened, with markers
+     * like {@code … 4,999,980 more …} in place of the elements or characters left out. Truth uses
+     * this for the actual and expected values that it renders itself.
+     */
+    static Fact renderedFact(String key, Object value) {
+        return new Fact(key, ValueRenderer.DEFAULT.render(value));
+    }
+
     /**
      * Creates a fact with no value, which will be printed in the format "key" (with no colon or
      * value).
@@ -15,16 +15,16 @@
  */
 package io.jbock.common.truth;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
 import static io.jbock.common.truth.ComparisonFailures.makeComparisonFailureFacts;
 import static io.jbock.common.truth.Fact.fact;
-import static io.jbock.common.truth.LazyMessage.evaluateAll;
 import static io.jbock.common.truth.Platform.inferDescription;
 import static io.jbock.common.truth.Platform.makeComparisonFailure;
 import static io.jbock.common.truth.Preconditions.checkState;
-import static io.jbock.common.truth.SubjectUtils.append;
 import static io.jbock.common.truth.SubjectUtils.concat;
 import static java.util.Objects.requireNonNull;
 
@@ -48,8 +48,7 @@ import static java.util.Objects.requireNonNull;
  */
 public final class FailureMetadata {
     static FailureMetadata forFailureStrategy(FailureStrategy failureStrategy) {
-        return new FailureMetadata(
-                failureStrategy, List.of(), List.of());
+        return new FailureMetadata(failureStrategy, null, null);
     }
 
     private final FailureStrategy strategy;
@@ -96,23 +95,47 @@ public final class FailureMetadata {
         }
     }
 
-    /*
-     * TODO(cpovirk): This implementation is wasteful, especially because `steps` is used even by
-     * non-chaining assertions. If it ever does matter, we could use an immutable cactus stack -- or
-     * probably even avoid storing most of the chain entirely (unless we end up wanting more of the
-     * chain to show "telescoping context," as in "the int value of this optional in this list in this
-     * multimap").
+    /**
+     * An immutable list which shares all but its last element with the list it was appended to, so
+     * that each derived {@code FailureMetadata} costs constant time and space. Such a list is also
+     * known as a cactus stack. The empty list is represented by null.
+     *
+     * <p>The lists are only read when an assertion fails, so we convert them to a {@link List}
+     * then.
      */
+    private static final class Chain<T> {
+        static <T> Chain<T> append(Chain<T> chain, T element) {
+            return new Chain<>(chain, requireNonNull(element));
+        }
+
+        /** Returns the elements of the given chain, from the first appended to the last. */
+        static <T> List<T> toList(Chain<T> chain) {
+            List<T> result = new ArrayList<>();
+            for (Chain<T> link = chain; link != null; link = link.previous) {
+                result.add(link.last);
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private final Chain<T> previous;
+        private final T last;
+
+        private Chain(Chain<T> previous, T last) {
+            this.previous = previous;
+            this.last = last;
+        }
+    }
 
-    private final List<LazyMessage> messages;
+    private final Chain<LazyMessage> messages;
 
-    private final List<Step> steps;
+    private final Chain<Step> steps;
 
-    FailureMetadata(
-            FailureStrategy strategy, List<LazyMessage> messages, List<Step> steps) {
+    private FailureMetadata(
+            FailureStrategy strategy, Chain<LazyMessage> messages, Chain<Step> steps) {
         this.strategy = requireNonNull(strategy);
-        this.messages = requireNonNull(messages);
-        this.steps = requireNonNull(steps);
+        this.messages = messages;
+        this.steps = steps;
     }
 
     /**
@@ -122,21 +145,18 @@ public final class FailureMetadata {
      * ThrowableSubject#hasMessageThat}.
      */
     FailureMetadata updateForSubject(Subject subject) {
-        List<Step> steps = append(this.steps, Step.subjectCreation(subject));
-        return derive(messages, steps);
+        return derive(messages, Chain.append(steps, Step.subjectCreation(subject)));
     }
 
     FailureMetadata updateForCheckCall() {
-        List<Step> steps = append(this.steps, Step.checkCall(null, null));
-        return derive(messages, steps);
+        return derive(messages, Chain.append(steps, Step.checkCall(null, null)));
     }
 
     FailureMetadata updateForCheckCall(
             OldAndNewValuesAreSimilar valuesAreSimilar, Function<String, String> descriptionUpdate) {
         requireNonNull(descriptionUpdate);
-        List<Step> steps =
-                append(this.steps, Step.checkCall(valuesAreSimilar, descriptionUpdate));
-        return derive(messages, steps);
+        return derive(
+                messages, Chain.append(steps, Step.checkCall(valuesAreSimilar, descriptionUpdate)));
     }
 
     /**
@@ -157,8 +177,7 @@ public final class FailureMetadata {
      * {@code Subject}) or {@link Truth#assertWithMessage} (for most other calls).
      */
     FailureMetadata withMessage(String format, Object[] args) {
-        List<LazyMessage> messages = append(this.messages, new LazyMessage(format, args));
-        return derive(messages, steps);
+        return derive(Chain.append(messages, new LazyMessage(format, args)), steps);
     }
 
     void failEqualityCheck(
@@ -166,32 +185,58 @@ public final class FailureMetadata {
             List<Fact> tailFacts,
             String expected,
             String actual) {
+        List<Step> steps = Chain.toList(this.steps);
         doFail(
                 makeComparisonFailure(
-                        evaluateAll(messages),
+                        messages(),
                         makeComparisonFailureFacts(
-                                concat(description(), headFacts),
-                                concat(tailFacts, rootUnlessThrowable()),
+                                concat(description(steps), headFacts),
+                                concat(tailFacts, rootUnlessThrowable(steps)),
                                 expected,
                                 actual),
                         expected,
                         actual,
-                        rootCause()));
+                        rootCause(steps),
+                        strategy.recordsFullStackTrace()));
     }
 
     void fail(List<Fact> facts) {
-        doFail(
+        fail(facts, Collections.emptyList());
+    }
+
+    /** Like {@link #fail(List)}, but adds the given errors to the failure as suppressed exceptions. */
+    void fail(List<Fact> facts, List<? extends Throwable> suppressed) {
+        List<Step> steps = Chain.toList(this.steps);
+        AssertionError failure =
                 new AssertionErrorWithFacts(
-                        evaluateAll(messages),
-                        concat(description(), facts, rootUnlessThrowable()),
-                        rootCause()));
+                        messages(),
+                        concat(description(steps), facts, rootUnlessThrowable(steps)),
+                        rootCause(steps),
+                        strategy.recordsFullStackTrace());
+        for (Throwable error : suppressed) {
+            failure.addSuppressed(error);
+        }
+        doFail(failure);
+    }
+
+    /**
+     * Formats the messages for a failure. This happens when the assertion fails, like for the facts,
+     * so that mutable arguments are shown in the state they had at that point. Only joining them
+     * with the facts into the final message text is left to the failure.
+     */
+    private List<String> messages() {
+        List<String> result = new ArrayList<>();
+        for (LazyMessage message : Chain.toList(messages)) {
+            result.add(message.toString());
+        }
+        return result;
     }
 
     private void doFail(AssertionError failure) {
         strategy.fail(failure);
     }
 
-    private FailureMetadata derive(List<LazyMessage> messages, List<Step> steps) {
+    private FailureMetadata derive(Chain<LazyMessage> messages, Chain<Step> steps) {
         return new FailureMetadata(strategy, messages, steps);
     }
 
@@ -219,7 +264,7 @@ public final class FailureMetadata {
      * root's exact relationship to the final object, but we know it's some object "different enough"
      * to be worth displaying.)
      */
-    private List<Fact> description() {
+    private static List<Fact> description(List<Step> steps) {
         String description = inferDescription();
         boolean descriptionIsInteresting = description != null;
         for (Step step : steps) {
@@ -265,7 +310,7 @@ public final class FailureMetadata {
      * additional {@code check}-like methods someday.)
      */
     // TODO(b/134505914): Consider returning multiple facts in some cases.
-    private List<Fact> rootUnlessThrowable() {
+    private static List<Fact> rootUnlessThrowable(List<Step> steps) {
         Step rootSubject = null;
         boolean seenDerivation = false;
         for (Step step : steps) {
@@ -313,7 +358,7 @@ public final class FailureMetadata {
      * Returns the first {@link Throwable} in the chain of actual values. Typically, we'll have a root
      * cause only if the assertion chain contains a {@link ThrowableSubject}.
      */
-    private Throwable rootCause() {
+    private static Throwable rootCause(List<Step> steps) {
         for (Step step : steps) {
             if (!step.isCheckCall() && step.subject.actual() instanceof Throwable) {
                 return (Throwable) step.subject.actual();
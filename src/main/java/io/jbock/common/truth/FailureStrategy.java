@@ -25,6 +25,7 @@ package io.jbock.common.truth;
  *
  * <ul>
  *   <li>{@linkplain Truth#assert_ assertions}
+ *   <li>{@linkplain Expect soft assertions}, which record failures and report them together
  *   <li>(and some useful only to people who implement custom subjects, described below)
  * </ul>
  *
@@ -67,4 +68,17 @@ public interface FailureStrategy {
      * exceptions they may throw or the other records they may make.
      */
     void fail(AssertionError failure);
+
+    /**
+     * Returns whether the failures passed to {@link #fail} should have a full stack trace. The
+     * default is {@code true}.
+     *
+     * <p>Strategies which capture large numbers of failures programmatically, rather than report them
+     * to a person, may return {@code false}. Their failures then have a stack trace of a single
+     * element, the call site of the assertion, which is much cheaper to create than a full stack
+     * trace. The call site is the innermost frame outside of Truth.
+     */
+    default boolean recordsFullStackTrace() {
+        return true;
+    }
 }
@@ -15,14 +15,14 @@
  */
 package io.jbock.common.truth;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Helper routines related to <a href="https://en.wikipedia.org/wiki/Matching_(graph_theory)">graph
@@ -50,7 +50,167 @@ final class GraphMatching {
      * returned.
      */
     static <U, V> Map<U, V> maximumCardinalityBipartiteMatching(Map<U, Set<V>> graph) {
-        return HopcroftKarp.overBipartiteGraph(graph).perform();
+        // Assign an index to every vertex, and translate the multimap into the adjacency arrays used
+        // by the index-based implementation.
+        List<U> lhsVertices = new ArrayList<>(graph.keySet());
+        List<V> rhsVertices = new ArrayList<>();
+        Map<V, Integer> rhsIndexes = new HashMap<>();
+        int[] edgeStarts = new int[lhsVertices.size() + 1];
+        for (int lhs = 0; lhs < lhsVertices.size(); lhs++) {
+            edgeStarts[lhs + 1] = edgeStarts[lhs] + graph.get(lhsVertices.get(lhs)).size();
+        }
+        int[] edgeTargets = new int[edgeStarts[lhsVertices.size()]];
+        int edge = 0;
+        for (U lhs : lhsVertices) {
+            for (V rhs : graph.get(lhs)) {
+                Integer rhsIndex = rhsIndexes.get(rhs);
+                if (rhsIndex == null) {
+                    rhsIndex = rhsVertices.size();
+                    rhsIndexes.put(rhs, rhsIndex);
+                    rhsVertices.add(rhs);
+                }
+                edgeTargets[edge++] = rhsIndex;
+            }
+        }
+        int[] lhsMatches =
+                maximumCardinalityBipartiteMatching(rhsVertices.size(), edgeStarts, edgeTargets);
+        Map<U, V> matching = new LinkedHashMap<>();
+        for (int lhs = 0; lhs < lhsMatches.length; lhs++) {
+            if (lhsMatches[lhs] != UNMATCHED) {
+                matching.put(lhsVertices.get(lhs), rhsVertices.get(lhsMatches[lhs]));
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Finds a maximum cardinality matching of a bipartite graph whose vertices are identified by
+     * indexes. The LHS vertices are {@code 0} to {@code edgeStarts.length - 2} and the RHS vertices
+     * are {@code 0} to {@code rhsCount - 1}. The edges are given in compressed sparse row form: the
+     * RHS vertices adjacent to LHS vertex {@code i} are {@code edgeTargets[edgeStarts[i]]} to {@code
+     * edgeTargets[edgeStarts[i + 1] - 1]}, so {@code edgeStarts[0]} must be zero and {@code
+     * edgeStarts} must be non-decreasing.
+     *
+     * <p>Returns an array which gives, for each LHS vertex, the index of the RHS vertex it is matched
+     * to, or {@link #UNMATCHED} if it is not in the matching. If there are multiple matchings which
+     * share the maximum cardinality, an arbitrary one is returned.
+     *
+     * <p>This starts from a greedy matching, which is often already maximum when most vertices have
+     * only one candidate. It then splits the graph into its connected components, and runs the
+     * Hopcroft–Karp algorithm only on those components which still have a free vertex on both
+     * sides, because no other component can contain an augmenting path. If there is enough work
+     * left, the components are matched in parallel on the common fork-join pool.
+     */
+    static int[] maximumCardinalityBipartiteMatching(
+            int rhsCount, int[] edgeStarts, int[] edgeTargets) {
+        int lhsCount = edgeStarts.length - 1;
+        int[] lhsMatches = new int[lhsCount];
+        int[] rhsMatches = new int[rhsCount];
+        Arrays.fill(lhsMatches, UNMATCHED);
+        Arrays.fill(rhsMatches, UNMATCHED);
+        int matched = 0;
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+            for (int edge = edgeStarts[lhs]; edge < edgeStarts[lhs + 1]; edge++) {
+                int rhs = edgeTargets[edge];
+                if (rhsMatches[rhs] == UNMATCHED) {
+                    lhsMatches[lhs] = rhs;
+                    rhsMatches[rhs] = lhs;
+                    matched++;
+                    break;
+                }
+            }
+        }
+        if (matched == lhsCount || matched == rhsCount) {
+            // Every vertex on one side is matched, so there cannot be an augmenting path.
+            return lhsMatches;
+        }
+        List<int[]> components =
+                unfinishedComponents(edgeStarts, edgeTargets, lhsMatches, rhsMatches);
+        int[] layers = new int[lhsCount];
+        int[] nextEdges = new int[lhsCount];
+        int remaining = 0;
+        for (int[] component : components) {
+            remaining += component.length;
+        }
+        Stream<int[]> work = components.size() > 1 && remaining >= PARALLEL_THRESHOLD
+                ? components.parallelStream()
+                : components.stream();
+        work.forEach(component -> HopcroftKarp.overComponent(
+                edgeStarts, edgeTargets, lhsMatches, rhsMatches, layers, nextEdges, component).perform());
+        return lhsMatches;
+    }
+
+    /** Marker for a vertex which is not in the matching. */
+    static final int UNMATCHED = -1;
+
+    /**
+     * The number of LHS vertices in unfinished components from which on the components are matched
+     * in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    /**
+     * Returns the LHS vertices of each connected component of the graph which has both a free LHS
+     * vertex and a free RHS vertex in the given matching. Vertices without edges are ignored.
+     */
+    private static List<int[]> unfinishedComponents(
+            int[] edgeStarts, int[] edgeTargets, int[] lhsMatches, int[] rhsMatches) {
+        // Find the components using a union-find over all the vertices, where the RHS vertices come
+        // after the LHS vertices.
+        int lhsCount = lhsMatches.length;
+        int[] parents = new int[lhsCount + rhsMatches.length];
+        for (int vertex = 0; vertex < parents.length; vertex++) {
+            parents[vertex] = vertex;
+        }
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+            for (int edge = edgeStarts[lhs]; edge < edgeStarts[lhs + 1]; edge++) {
+                parents[root(parents, lhs)] = root(parents, lhsCount + edgeTargets[edge]);
+            }
+        }
+        boolean[] hasFreeLhs = new boolean[parents.length];
+        boolean[] hasFreeRhs = new boolean[parents.length];
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+            if (lhsMatches[lhs] == UNMATCHED) {
+                hasFreeLhs[root(parents, lhs)] = true;
+            }
+        }
+        for (int rhs = 0; rhs < rhsMatches.length; rhs++) {
+            if (rhsMatches[rhs] == UNMATCHED) {
+                hasFreeRhs[root(parents, lhsCount + rhs)] = true;
+            }
+        }
+        // Group the LHS vertices of the unfinished components by their root. The sizes array first
+        // counts the vertices of each component, and then tracks how many have been placed.
+        int[] sizes = new int[parents.length];
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+            int root = root(parents, lhs);
+            if (hasFreeLhs[root] && hasFreeRhs[root]) {
+                sizes[root]++;
+            }
+        }
+        int[][] componentsByRoot = new int[parents.length][];
+        List<int[]> components = new ArrayList<>();
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+            int root = root(parents, lhs);
+            if (hasFreeLhs[root] && hasFreeRhs[root]) {
+                if (componentsByRoot[root] == null) {
+                    componentsByRoot[root] = new int[sizes[root]];
+                    components.add(componentsByRoot[root]);
+                    sizes[root] = 0;
+                }
+                componentsByRoot[root][sizes[root]++] = lhs;
+            }
+        }
+        return components;
+    }
+
+    /** Returns the root of the given vertex in the union-find forest, halving the path on the way. */
+    private static int root(int[] parents, int vertex) {
+        while (parents[vertex] != vertex) {
+            parents[vertex] = parents[parents[vertex]];
+            vertex = parents[vertex];
+        }
+        return vertex;
     }
 
     private GraphMatching() {
@@ -64,45 +224,103 @@ final class GraphMatching {
      * <p>The worst-case complexity is {@code O(E V^0.5)} where the graph contains {@code E} edges and
      * {@code V} vertices. For dense graphs, where {@code E} is {@code O(V^2)}, this is {@code V^2.5}
      * (and non-dense graphs perform better than dense graphs with the same number of vertices).
+     *
+     * <p>The matching is kept in both directions in primitive arrays, so that both finding the
+     * partner of a matched vertex and testing whether a vertex is free take constant time.
+     *
+     * <p>An instance works on a single connected component of the graph, starting from whatever
+     * matching the arrays already hold. It only reads and writes the array entries of the vertices
+     * in its component, so instances for different components can run concurrently on shared
+     * arrays.
      */
-    private static class HopcroftKarp<U, V> {
+    private static class HopcroftKarp {
+
+        /** Layer number of an LHS vertex which was not visited by the most recent BFS. */
+        private static final int NOT_VISITED = Integer.MAX_VALUE;
+
+        private final int[] edgeStarts;
+        private final int[] edgeTargets;
+
+        /** The LHS vertices of the component. */
+        private final int[] lhsVertices;
+
+        /** The RHS vertex matched to each LHS vertex, or {@link #UNMATCHED}. */
+        private final int[] lhsMatches;
+
+        /** The LHS vertex matched to each RHS vertex, or {@link #UNMATCHED}. */
+        private final int[] rhsMatches;
+
+        /** The layer of each LHS vertex in the most recent BFS, or {@link #NOT_VISITED}. */
+        private final int[] layers;
+
+        /** Work queue for the BFS, holding LHS vertices of the component. */
+        private final int[] queue;
+
+        /**
+         * The next edge to try from each LHS vertex in the DFS. This is reset by each BFS, and only
+         * ever advances during a phase.
+         */
+        private final int[] nextEdges;
 
-        private final Map<U, Set<V>> graph;
+        /** Explicit stack for the DFS, holding the LHS vertices on the current search path. */
+        private final int[] path;
 
         /**
-         * Factory method which returns an instance ready to perform the algorithm over the bipartite
-         * graph described by the given multimap.
+         * Factory method which returns an instance ready to perform the algorithm over the connected
+         * component with the given LHS vertices, starting from the matching given by {@code
+         * lhsMatches} and {@code rhsMatches}. The {@code layers} and {@code nextEdges} arrays are
+         * scratch space indexed by LHS vertex.
          */
-        static <U, V> HopcroftKarp<U, V> overBipartiteGraph(Map<U, Set<V>> graph) {
-            return new HopcroftKarp<>(graph);
+        static HopcroftKarp overComponent(
+                int[] edgeStarts,
+                int[] edgeTargets,
+                int[] lhsMatches,
+                int[] rhsMatches,
+                int[] layers,
+                int[] nextEdges,
+                int[] lhsVertices) {
+            return new HopcroftKarp(
+                    edgeStarts, edgeTargets, lhsMatches, rhsMatches, layers, nextEdges, lhsVertices);
         }
 
-        private HopcroftKarp(Map<U, Set<V>> graph) {
-            this.graph = graph;
+        private HopcroftKarp(
+                int[] edgeStarts,
+                int[] edgeTargets,
+                int[] lhsMatches,
+                int[] rhsMatches,
+                int[] layers,
+                int[] nextEdges,
+                int[] lhsVertices) {
+            this.edgeStarts = edgeStarts;
+            this.edgeTargets = edgeTargets;
+            this.lhsVertices = lhsVertices;
+            this.lhsMatches = lhsMatches;
+            this.rhsMatches = rhsMatches;
+            this.layers = layers;
+            this.queue = new int[lhsVertices.length];
+            this.nextEdges = nextEdges;
+            this.path = new int[lhsVertices.length];
         }
 
-        /** Performs the algorithm, and returns a bimap describing the matching found. */
-        Map<U, V> perform() {
-            Map<U, V> matching = new LinkedHashMap<>();
+        /** Performs the algorithm, updating the matching in place. */
+        void perform() {
             while (true) {
                 // Perform the BFS as described below. This finds the length of the shortest augmenting path
                 // and a guide which locates all the augmenting paths of that length.
-                Map<U, Integer> layers = new HashMap<>();
-                Optional<Integer> freeRhsVertexLayer = breadthFirstSearch(matching, layers);
-                if (freeRhsVertexLayer.isEmpty()) {
+                int freeRhsVertexLayer = breadthFirstSearch();
+                if (freeRhsVertexLayer == NOT_VISITED) {
                     // The BFS failed, i.e. we found no augmenting paths. So we're done.
                     break;
                 }
                 // Perform the DFS and update the matching as described below starting from each free LHS
                 // vertex. This finds a disjoint set of augmenting paths of the shortest length and updates
                 // the matching by computing the symmetric difference with that set.
-                for (U lhs : graph.keySet()) {
-                    if (!matching.containsKey(lhs)) {
-                        depthFirstSearch(matching, layers, freeRhsVertexLayer.get(), lhs);
+                for (int lhs : lhsVertices) {
+                    if (lhsMatches[lhs] == UNMATCHED) {
+                        depthFirstSearch(freeRhsVertexLayer, lhs);
                     }
                 }
             }
-            return matching;
         }
 
         /**
@@ -119,58 +337,57 @@ final class GraphMatching {
          * that every path in a successful search starts with a free LHS vertex and ends with a free RHS
          * vertex, with every intermediate vertex being non-free.
          *
-         * @param matching A bimap describing the matching to be used for the BFS, which is not modified
-         *     by this method
-         * @param layers A map to be filled with the layer of each LHS vertex visited during the BFS,
-         *     which should be empty when passed into this method and will be modified by this method
-         * @return The number of the layer in which the first free RHS vertex was found, if any, and the
-         *     absent value if the BFS was exhausted without finding any free RHS vertex
+         * <p>The layers are written to {@link #layers}, with {@link #NOT_VISITED} for every LHS vertex
+         * which was not visited.
+         *
+         * @return The number of the layer in which the first free RHS vertex was found, if any, and
+         *     {@link #NOT_VISITED} if the BFS was exhausted without finding any free RHS vertex
          */
-        private Optional<Integer> breadthFirstSearch(Map<U, V> matching, Map<U, Integer> layers) {
-            Queue<U> queue = new ArrayDeque<>();
-            Optional<Integer> freeRhsVertexLayer = Optional.empty();
+        private int breadthFirstSearch() {
+            int head = 0;
+            int tail = 0;
+            int freeRhsVertexLayer = NOT_VISITED;
 
             // Enqueue all free LHS vertices and assign them to layer 1.
-            for (U lhs : graph.keySet()) {
-                if (!matching.containsKey(lhs)) {
-                    layers.put(lhs, 1);
-                    queue.add(lhs);
+            for (int lhs : lhsVertices) {
+                nextEdges[lhs] = edgeStarts[lhs];
+                if (lhsMatches[lhs] == UNMATCHED) {
+                    layers[lhs] = 1;
+                    queue[tail++] = lhs;
+                } else {
+                    layers[lhs] = NOT_VISITED;
                 }
             }
 
             // Now proceed with the BFS.
-            while (!queue.isEmpty()) {
-                U lhs = queue.remove();
-                int layer = layers.get(lhs);
+            while (head < tail) {
+                int lhs = queue[head++];
+                int layer = layers[lhs];
                 // If the BFS has proceeded past a layer in which a free RHS vertex was found, stop.
-                if (freeRhsVertexLayer.isPresent() && layer > freeRhsVertexLayer.get()) {
+                if (layer > freeRhsVertexLayer) {
                     break;
                 }
                 // We want to consider all the unmatched edges from the current LHS vertex to the RHS, and
                 // then all the matched edges from those RHS vertices back to the LHS, to find the next
                 // layer of LHS vertices. We actually iterate over all edges, both matched and unmatched,
                 // from the current LHS vertex: we'll just do nothing for matched edges.
-                for (V rhs : graph.getOrDefault(lhs, Set.of())) {
-                    if (!matching.containsValue(rhs)) {
+                for (int edge = edgeStarts[lhs]; edge < edgeStarts[lhs + 1]; edge++) {
+                    int nextLhs = rhsMatches[edgeTargets[edge]];
+                    if (nextLhs == UNMATCHED) {
                         // We found a free RHS vertex. Record the layer at which we found it. Since the RHS
                         // vertex is free, there is no matched edge to follow. (Note that the edge from the LHS
                         // to the RHS must be unmatched, because a matched edge cannot lead to a free vertex.)
-                        if (freeRhsVertexLayer.isEmpty()) {
-                            freeRhsVertexLayer = Optional.of(layer);
-                        }
-                    } else {
-                        // We found an RHS vertex with a matched vertex back to the LHS. If we haven't visited
-                        // that new LHS vertex yet, add it to the next layer. (If the edge from the LHS to the
-                        // RHS was matched then the matched edge from the RHS to the LHS will lead back to the
-                        // current LHS vertex, which has definitely been visited, so we correctly do nothing.)
-                        U nextLhs = matching.entrySet().stream()
-                                .filter(e -> e.getValue().equals(rhs))
-                                .map(Map.Entry::getKey)
-                                .findFirst().orElse(null);
-                        if (!layers.containsKey(nextLhs)) {
-                            layers.put(nextLhs, layer + 1);
-                            queue.add(nextLhs);
+                        if (freeRhsVertexLayer == NOT_VISITED) {
+                            freeRhsVertexLayer = layer;
                         }
+                    } else if (layers[nextLhs] == NOT_VISITED) {
+                        // We found an RHS vertex with a matched vertex back to the LHS, and we haven't visited
+                        // that new LHS vertex yet, so add it to the next layer. (If the edge from the LHS to
+                        // the RHS was matched then the matched edge from the RHS to the LHS will lead back to
+                        // the current LHS vertex, which has definitely been visited, so we correctly do
+                        // nothing.)
+                        layers[nextLhs] = layer + 1;
+                        queue[tail++] = nextLhs;
                     }
                 }
             }
@@ -206,17 +423,20 @@ final class GraphMatching {
          *       (i.e. the set of edges used in the paths found by repeated DFSes are disjoint).
          * </ul>
          *
-         * @param matching A bimap describing the matching to be used for the BFS, which will be
-         *     modified by this method as described above
-         * @param layers A map giving the layer of each LHS vertex visited during the BFS, which will
-         *     not be modified by this method
+         * <p>An LHS vertex from which the search is exhausted is removed from the layers, so that no
+         * later DFS in the same phase explores it again, and each LHS vertex remembers the next edge
+         * to try in {@link #nextEdges}. This keeps the cost of each phase linear in the number of
+         * edges.
+         *
+         * <p>The search path is kept on the explicit stack {@link #path} rather than on the call stack,
+         * because augmenting paths can be as long as the graph is large.
+         *
          * @param freeRhsVertexLayer The number of the layer in which the first free RHS vertex was
          *     found
-         * @param lhs The LHS vertex from which to start the DFS
+         * @param start The LHS vertex from which to start the DFS
          * @return Whether or not the DFS was successful
          */
-        private boolean depthFirstSearch(
-                Map<U, V> matching, Map<U, Integer> layers, int freeRhsVertexLayer, U lhs) {
+        private boolean depthFirstSearch(int freeRhsVertexLayer, int start) {
             // Note that this differs from the method described in the text of the wikipedia article (at
             // time of writing) in two ways. Firstly, we proceed from a free LHS vertex to a free RHS
             // vertex in the target layer instead of the other way around, which makes no difference.
@@ -224,44 +444,59 @@ final class GraphMatching {
             // rather than using all the paths at the end of the phase. As explained above, the effect of
             // this is that we automatically find only the disjoint set of paths, as required. This is,
             // fact, the approach taken in the pseudocode of the wikipedia article (at time of writing).
-            int layer = layers.get(lhs);
-            if (layer > freeRhsVertexLayer) {
-                // We've gone past the target layer, so we're not going to find what we're looking for.
-                return false;
-            }
-            // Consider every edge from this LHS vertex.
-            for (V rhs : graph.getOrDefault(lhs, Set.of())) {
-                if (!matching.containsValue(rhs)) {
-                    // We found a free RHS vertex. (This must have been in the target layer because, by
-                    // definition, no free RHS vertex is reachable in any earlier layer, and because we stop
-                    // when we get past that layer.) We add the unmatched edge used to get here to the
-                    // matching, and remove any previous matched edge leading to the LHS vertex.
-                    matching.put(lhs, rhs);
-                    return true;
-                } else {
-                    // We found a non-free RHS vertex. Follow the matched edge from that RHS vertex to find
-                    // the next LHS vertex.
-                    U nextLhs = matching.entrySet().stream()
-                            .filter(e -> Objects.equals(e.getValue(), rhs))
-                            .map(Map.Entry::getKey)
-                            .findFirst()
-                            .orElseThrow();
-                    if (layers.containsKey(nextLhs) && layers.get(nextLhs) == layer + 1) {
-                        // The next LHS vertex is in the next layer of the BFS, so we can use this path for our
-                        // DFS. Recurse into the DFS.
-                        if (depthFirstSearch(matching, layers, freeRhsVertexLayer, nextLhs)) {
-                            // The DFS succeeded, and we're reversing back up the search path. At each stage we
-                            // put the unmatched edge from the LHS to the RHS into the matching, and remove any
-                            // matched edge previously leading to the LHS. The combined effect of all the
-                            // modifications made while reversing all the way back up the search path is to update
-                            // the matching as described in the javadoc.
-                            matching.put(lhs, rhs);
-                            return true;
-                        }
+            int depth = 0;
+            path[0] = start;
+            while (depth >= 0) {
+                int lhs = path[depth];
+                int layer = layers[lhs];
+                // Consider every remaining edge from this LHS vertex, unless we've gone past the target
+                // layer, in which case we're not going to find what we're looking for.
+                boolean descended = false;
+                while (layer <= freeRhsVertexLayer && nextEdges[lhs] < edgeStarts[lhs + 1]) {
+                    int nextLhs = rhsMatches[edgeTargets[nextEdges[lhs]]];
+                    if (nextLhs == UNMATCHED) {
+                        // We found a free RHS vertex. (This must have been in the target layer because, by
+                        // definition, no free RHS vertex is reachable in any earlier layer, and because we
+                        // stop when we get past that layer.)
+                        augment(depth);
+                        return true;
+                    }
+                    if (layers[nextLhs] == layer + 1) {
+                        // We found a non-free RHS vertex, and the matched edge from that RHS vertex leads to
+                        // the next layer of the BFS, so we can use this path for our DFS. Descend into it.
+                        path[++depth] = nextLhs;
+                        descended = true;
+                        break;
+                    }
+                    nextEdges[lhs]++;
+                }
+                if (!descended) {
+                    // The search from this LHS vertex is exhausted. Back up to the previous LHS vertex on
+                    // the path, and move on to its next edge.
+                    layers[lhs] = NOT_VISITED;
+                    depth--;
+                    if (depth >= 0) {
+                        nextEdges[path[depth]]++;
                     }
                 }
             }
             return false;
         }
+
+        /**
+         * Updates the matching using the augmenting path which the DFS found, which consists of the
+         * LHS vertices {@code path[0]} to {@code path[depth]} each followed by the RHS vertex at its
+         * current edge. We put each of those unmatched edges from the LHS to the RHS into the
+         * matching, which replaces any matched edge previously leading to the RHS. The combined effect
+         * is to update the matching as described in the javadoc of {@link #depthFirstSearch}.
+         */
+        private void augment(int depth) {
+            for (int i = depth; i >= 0; i--) {
+                int lhs = path[i];
+                int rhs = edgeTargets[nextEdges[lhs]];
+                lhsMatches[lhs] = rhs;
+                rhsMatches[rhs] = lhs;
+            }
+        }
     }
 }
@@ -17,10 +17,15 @@ package io.jbock.common.truth;
 
 import io.jbock.common.truth.Correspondence.DiffFormatter;
 import io.jbock.common.truth.SubjectUtils.DuplicateGroupedAndTyped;
+import io.jbock.common.truth.SubjectUtils.NearMissBudget;
+import io.jbock.common.truth.SubjectUtils.NearMisses;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -30,12 +35,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 import static io.jbock.common.truth.Fact.fact;
+import static io.jbock.common.truth.Fact.renderedFact;
 import static io.jbock.common.truth.Fact.simpleFact;
 import static io.jbock.common.truth.IterableSubject.ElementFactGrouping.ALL_IN_ONE_FACT;
 import static io.jbock.common.truth.IterableSubject.ElementFactGrouping.FACT_PER_ELEMENT;
@@ -46,11 +57,12 @@ import static io.jbock.common.truth.SubjectUtils.countDuplicates;
 import static io.jbock.common.truth.SubjectUtils.countDuplicatesAndAddTypeInfo;
 import static io.jbock.common.truth.SubjectUtils.countDuplicatesAndMaybeAddTypeInfoReturnObject;
 import static io.jbock.common.truth.SubjectUtils.entryString;
+import static io.jbock.common.truth.SubjectUtils.findNearMisses;
 import static io.jbock.common.truth.SubjectUtils.hasMatchingToStringPair;
 import static io.jbock.common.truth.SubjectUtils.iterableToCollection;
 import static io.jbock.common.truth.SubjectUtils.iterableToList;
 import static io.jbock.common.truth.SubjectUtils.objectToTypeName;
-import static io.jbock.common.truth.SubjectUtils.retainMatchingToString;
+import static java.lang.Math.min;
 import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.joining;
@@ -61,7 +73,11 @@ import static java.util.stream.Collectors.joining;
  * <p><b>Note:</b>
  *
  * <ul>
- *   <li>Assertions may iterate through the given {@link Iterable} more than once.
+ *   <li>Assertions may iterate through the given {@link Iterable} more than once, if it is a
+ *       {@link Collection}. Other iterables are iterated in full at most once per subject, and
+ *       their elements are kept for all later assertions and failure messages. {@link #isEmpty}
+ *       and {@link #isNotEmpty} only look at the first element, unless the elements have already
+ *       been collected.
  *   <li>Assertions may also require that the elements in the given {@link Iterable} implement
  *       {@link Object#hashCode} correctly.
  * </ul>
@@ -73,6 +89,8 @@ import static java.util.stream.Collectors.joining;
 public class IterableSubject extends Subject {
 
     private final Iterable<?> actual;
+    // The elements of actual, which are only collected once; see elements().
+    private Collection<?> elements;
 
     /**
      * Constructor for use by subclasses. If you want to create an instance of this class itself, call
@@ -83,17 +101,41 @@ public class IterableSubject extends Subject {
         this.actual = iterable;
     }
 
+    /**
+     * Returns the elements of actual. An iterable which isn't a collection is iterated on the first
+     * call that needs all the elements, into a list, so that it's never iterated again by such
+     * calls.
+     */
+    private Collection<?> elements() {
+        if (elements == null) {
+            if (actual instanceof Collection) {
+                elements = (Collection<?>) actual;
+            } else {
+                List<Object> list = new ArrayList<>();
+                actual.forEach(list::add);
+                elements = Collections.unmodifiableList(list);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Returns whether actual has any elements. Unless the elements have already been collected, this
+     * only looks at the first one, so that it also works for huge or infinite iterables.
+     */
+    private boolean hasElements() {
+        if (elements == null && !(actual instanceof Collection)) {
+            return actual.iterator().hasNext();
+        }
+        return !elements().isEmpty();
+    }
+
     @Override
     protected String actualCustomStringRepresentation() {
-        if (actual != null) {
-            // Check the value of iterable.toString() against the default Object.toString() implementation
-            // so we can avoid things like "com.google.common.graph.Traverser$GraphTraverser$1@5e316c74"
-            String objectToString =
-                    actual.getClass().getName() + '@' + Integer.toHexString(System.identityHashCode(actual));
-            if (actual.toString().equals(objectToString)) {
-                return StreamSupport.stream(actual.spliterator(), false)
-                        .collect(Collectors.toList()).toString();
-            }
+        // Avoid things like "com.google.common.graph.Traverser$GraphTraverser$1@5e316c74" for iterables
+        // which don't override Object.toString().
+        if (actual != null && ValueRenderer.hasDefaultToString(actual.getClass())) {
+            return ValueRenderer.DEFAULT.renderElements(elements());
         }
         return super.actualCustomStringRepresentation();
     }
@@ -123,14 +165,14 @@ public class IterableSubject extends Subject {
 
     /** Fails if the subject is not empty. */
     public final void isEmpty() {
-        if (actual.iterator().hasNext()) {
+        if (hasElements()) {
             failWithActual(simpleFact("expected to be empty"));
         }
     }
 
     /** Fails if the subject is empty. */
     public final void isNotEmpty() {
-        if (!actual.iterator().hasNext()) {
+        if (!hasElements()) {
             failWithoutActual(simpleFact("expected not to be empty"));
         }
     }
@@ -138,41 +180,37 @@ public class IterableSubject extends Subject {
     /** Fails if the subject does not have the given size. */
     public final void hasSize(int expectedSize) {
         checkArgument(expectedSize >= 0, "expectedSize(%s) must be >= 0", expectedSize);
-        int actualSize = size(actual);
+        int actualSize = elements().size();
         check("size()").that(actualSize).isEqualTo(expectedSize);
     }
 
-    private static int size(Iterable<?> iterable) {
-        if ((iterable instanceof Collection)) {
-            return ((Collection<?>) iterable).size();
-        }
-        Iterator<?> iterator = iterable.iterator();
-        long count = 0L;
-        while (iterator.hasNext()) {
-            iterator.next();
-            count++;
-            Preconditions.checkState(count < Integer.MAX_VALUE);
-        }
-        return (int) count;
-    }
-
     /** Checks (with a side-effect failure) that the subject contains the supplied item. */
     public final void contains(Object element) {
-        boolean containsElement = StreamSupport.stream(actual.spliterator(), false)
+        boolean containsElement = elements().stream()
                 .anyMatch(obj -> Objects.equals(element, obj));
         if (!containsElement) {
             List<Object> elementList = new ArrayList<>();
             elementList.add(element);
-            if (hasMatchingToStringPair(actual, elementList)) {
-                failWithoutActual(
-                        fact("expected to contain", element),
-                        fact("an instance of", objectToTypeName(element)),
-                        simpleFact("but did not"),
+            RenderingContext context = new RenderingContext();
+            NearMisses nearMisses =
+                    findNearMisses(
+                            context, elements(), elementList /* itemsToCheck */, NearMissBudget.DEFAULT);
+            if (!nearMisses.elements.isEmpty()) {
+                List<Fact> facts = new ArrayList<>();
+                facts.add(fact("expected to contain", context.stringValueOf(element)));
+                facts.add(fact("an instance of", context.typeName(element)));
+                facts.add(simpleFact("but did not"));
+                facts.add(
                         fact(
                                 "though it did contain",
-                                countDuplicatesAndAddTypeInfo(
-                                        retainMatchingToString(actual, elementList /* itemsToCheck */))),
-                        fullContents());
+                                countDuplicatesAndAddTypeInfo(context, nearMisses.elements)));
+                if (nearMisses.incomplete) {
+                    facts.add(nearMissSearchIncomplete());
+                }
+                facts.add(fullContents());
+                failWithoutActual(facts);
+            } else if (nearMisses.incomplete) {
+                failWithActual(fact("expected to contain", element), nearMissSearchIncomplete());
             } else {
                 failWithActual("expected to contain", element);
             }
@@ -181,7 +219,7 @@ public class IterableSubject extends Subject {
 
     /** Checks (with a side-effect failure) that the subject does not contain the supplied item. */
     public final void doesNotContain(Object element) {
-        boolean containsElement = StreamSupport.stream(actual.spliterator(), false)
+        boolean containsElement = elements().stream()
                 .anyMatch(obj -> Objects.equals(element, obj));
         if (containsElement) {
             failWithActual("expected not to contain", element);
@@ -191,7 +229,7 @@ public class IterableSubject extends Subject {
     /** Checks that the subject does not contain duplicate elements. */
     public final void containsNoDuplicates() {
         Map<Object, Integer> multiset = new LinkedHashMap<>();
-        for (Object entry : actual) {
+        for (Object entry : elements()) {
             Integer count = multiset.getOrDefault(entry, 0);
             multiset.put(entry, count + 1);
         }
@@ -219,21 +257,32 @@ public class IterableSubject extends Subject {
      */
     // TODO(cpovirk): Consider using makeElementFacts-style messages here, in contains(), etc.
     public final void containsAnyIn(Iterable<?> expected) {
-        Collection<?> actual = iterableToCollection(this.actual);
+        Collection<?> actual = elements();
         for (Object item : expected) {
             if (actual.contains(item)) {
                 return;
             }
         }
-        if (hasMatchingToStringPair(actual, expected)) {
-            failWithoutActual(
-                    fact("expected to contain any of", countDuplicatesAndAddTypeInfo(expected)),
-                    simpleFact("but did not"),
+        RenderingContext context = new RenderingContext();
+        NearMisses nearMisses =
+                findNearMisses(context, actual, expected /* itemsToCheck */, NearMissBudget.DEFAULT);
+        if (!nearMisses.elements.isEmpty()) {
+            List<Fact> facts = new ArrayList<>();
+            facts.add(
+                    fact("expected to contain any of", countDuplicatesAndAddTypeInfo(context, expected)));
+            facts.add(simpleFact("but did not"));
+            facts.add(
                     fact(
                             "though it did contain",
-                            countDuplicatesAndAddTypeInfo(
-                                    retainMatchingToString(this.actual, expected /* itemsToCheck */))),
-                    fullContents());
+                            countDuplicatesAndAddTypeInfo(context, nearMisses.elements)));
+            if (nearMisses.incomplete) {
+                facts.add(nearMissSearchIncomplete());
+            }
+            facts.add(fullContents());
+            failWithoutActual(facts);
+        } else if (nearMisses.incomplete) {
+            failWithActual(
+                    renderedFact("expected to contain any of", expected), nearMissSearchIncomplete());
         } else {
             failWithActual("expected to contain any of", expected);
         }
@@ -273,28 +322,33 @@ public class IterableSubject extends Subject {
      * within the actual elements, but they are not required to be consecutive.
      */
     public final Ordered containsAtLeastElementsIn(Collection<?> expectedIterable) {
-        List<Object> actual = new LinkedList<>();
-        this.actual.forEach(actual::add);
-        final Collection<?> expected = iterableToCollection(expectedIterable);
+        return containsAtLeastElementsIn(expectedIterable, commonSortOrder(expectedIterable));
+    }
 
+    private Ordered containsAtLeastElementsIn(
+            Collection<?> expectedIterable, Comparator<Object> sortedBy) {
+        final Collection<?> expected = iterableToCollection(expectedIterable);
+        if (sortedBy != null) {
+            SortedMerge merge = SortedMerge.merge(elements(), expected, sortedBy, false);
+            if (merge != null) {
+                // Both are sorted the same way, so the elements which were found are in order.
+                return merge.missing().isEmpty() ? IN_ORDER : failAtLeast(expected, merge.missing());
+            }
+        }
+        ElementIndex actualIndex = new ElementIndex(elements());
         List<Object> missing = new ArrayList<>();
-        List<Object> actualNotInOrder = new ArrayList<>();
-
         boolean ordered = true;
-        // step through the expected elements...
+        // The position after the last actual element that was found in order.
+        int cursor = 0;
         for (Object e : expected) {
-            int index = actual.indexOf(e);
-            if (index != -1) { // if we find the element in the actual list...
-                // drain all the elements that come before that element into actualNotInOrder
-                moveElements(actual, actualNotInOrder, index);
-                // and remove the element from the actual list
-                actual.remove(0);
-            } else { // otherwise try removing it from actualNotInOrder...
-                if (actualNotInOrder.remove(e)) { // if it was in actualNotInOrder, we're not in order
-                    ordered = false;
-                } else { // if it's not in actualNotInOrder, we're missing an expected element
-                    missing.add(e);
-                }
+            // find the first unused equal actual element, preferring the ones after the cursor
+            int position = actualIndex.take(e, cursor);
+            if (position >= cursor) {
+                cursor = position + 1;
+            } else if (position != -1) { // if it was before the cursor, we're not in order
+                ordered = false;
+            } else { // if there was none, we're missing an expected element
+                missing.add(e);
             }
         }
         // if we have any missing expected elements, fail
@@ -317,7 +371,7 @@ public class IterableSubject extends Subject {
             public void inOrder() {
                 failWithActual(
                         simpleFact("required elements were all found, but order was wrong"),
-                        fact("expected order for required elements", expected));
+                        renderedFact("expected order for required elements", expected));
             }
         };
     }
@@ -336,11 +390,19 @@ public class IterableSubject extends Subject {
     }
 
     private Ordered failAtLeast(Collection<?> expected, Collection<?> missingRawObjects) {
-        Collection<?> nearMissRawObjects =
-                retainMatchingToString(actual, missingRawObjects /* itemsToCheck */);
+        RenderingContext context = new RenderingContext();
+        NearMisses nearMisses =
+                findNearMisses(
+                        context,
+                        elements(),
+                        missingRawObjects /* itemsToCheck */,
+                        NearMissBudget.DEFAULT);
 
         List<Fact> facts = new ArrayList<>(makeElementFactsForBoth(
-                "missing", missingRawObjects, "though it did contain", nearMissRawObjects));
+                context, "missing", missingRawObjects, "though it did contain", nearMisses.elements));
+        if (nearMisses.incomplete) {
+            facts.add(nearMissSearchIncomplete());
+        }
         /*
          * TODO(cpovirk): Make makeElementFactsForBoth support generating just "though it did contain"
          * rather than "though it did contain (2)?" Users might interpret the number as the *total*
@@ -349,23 +411,13 @@ public class IterableSubject extends Subject {
          * contain," which has been our standard so far?) Or maybe it's all clear enough in context,
          * since this error shows up only to inform users of type mismatches.
          */
-        facts.add(fact("expected to contain at least", expected));
+        facts.add(renderedFact("expected to contain at least", expected));
         facts.add(butWas());
 
         failWithoutActual(facts);
         return ALREADY_FAILED;
     }
 
-    /**
-     * Removes at most the given number of available elements from the input list and adds them to the
-     * given output collection.
-     */
-    private static void moveElements(List<?> input, Collection<Object> output, int maxElements) {
-        for (int i = 0; i < maxElements; i++) {
-            output.add(input.remove(0));
-        }
-    }
-
     /**
      * Checks that a subject contains exactly the provided objects or fails.
      *
@@ -388,7 +440,9 @@ public class IterableSubject extends Subject {
             expected = asList(varargs);
         }
         return containsExactlyElementsIn(
-                expected, varargs != null && varargs.length == 1 && varargs[0] instanceof Iterable);
+                expected,
+                varargs != null && varargs.length == 1 && varargs[0] instanceof Iterable,
+                null);
     }
 
     /**
@@ -402,7 +456,7 @@ public class IterableSubject extends Subject {
      * on the object returned by this method.
      */
     public final Ordered containsExactlyElementsIn(Iterable<?> expected) {
-        return containsExactlyElementsIn(expected, false);
+        return containsExactlyElementsIn(expected, false, commonSortOrder(expected));
     }
 
     /**
@@ -419,8 +473,8 @@ public class IterableSubject extends Subject {
     }
 
     private Ordered containsExactlyElementsIn(
-            final Iterable<?> required, boolean addElementsInWarning) {
-        Iterator<?> actualIter = actual.iterator();
+            final Iterable<?> required, boolean addElementsInWarning, Comparator<Object> sortedBy) {
+        Iterator<?> actualIter = elements().iterator();
         Iterator<?> requiredIter = required.iterator();
 
         if (!requiredIter.hasNext()) {
@@ -432,6 +486,18 @@ public class IterableSubject extends Subject {
             }
         }
 
+        if (sortedBy != null) {
+            SortedMerge merge = SortedMerge.merge(elements(), required, sortedBy, true);
+            // A single mismatching pair gets a ComparisonFailure below.
+            if (merge != null && !merge.singleMismatch()) {
+                if (merge.missing().isEmpty() && merge.extra().isEmpty()) {
+                    // Both are sorted the same way, so they contain the same elements in order.
+                    return IN_ORDER;
+                }
+                return failExactly(required, addElementsInWarning, merge.missing(), merge.extra());
+            }
+        }
+
         // Step through both iterators comparing elements pairwise.
         boolean isFirst = true;
         while (actualIter.hasNext() && requiredIter.hasNext()) {
@@ -465,25 +531,27 @@ public class IterableSubject extends Subject {
                             .failEqualityCheckForEqualsWithoutDescription(requiredElement);
                     return ALREADY_FAILED;
                 }
-                // Missing elements; elements that are not missing will be removed as we iterate.
-                Collection<Object> missing = new ArrayList<>();
-                missing.add(requiredElement);
-                requiredIter.forEachRemaining(missing::add);
+                // Missing elements; elements that are not missing will be taken as we iterate.
+                List<Object> remainingRequired = new ArrayList<>();
+                remainingRequired.add(requiredElement);
+                requiredIter.forEachRemaining(remainingRequired::add);
+                ElementIndex missingIndex = new ElementIndex(remainingRequired);
 
                 // Extra elements that the subject had but shouldn't have.
                 Collection<Object> extra = new ArrayList<>();
 
-                // Remove all actual elements from missing, and add any that weren't in missing
-                // to extra.
-                if (!missing.remove(actualElement)) {
+                // Take all actual elements from missing, and add any that weren't in missing
+                // to extra. With the cursor at the end, take() finds the first equal element.
+                if (missingIndex.take(actualElement, missingIndex.size()) == -1) {
                     extra.add(actualElement);
                 }
                 while (actualIter.hasNext()) {
                     Object item = actualIter.next();
-                    if (!missing.remove(item)) {
+                    if (missingIndex.take(item, missingIndex.size()) == -1) {
                         extra.add(item);
                     }
                 }
+                Collection<Object> missing = missingIndex.remaining();
 
                 if (missing.isEmpty() && extra.isEmpty()) {
                     /*
@@ -494,7 +562,7 @@ public class IterableSubject extends Subject {
                         @Override
                         public void inOrder() {
                             failWithActual(
-                                    simpleFact("contents match, but order was wrong"), fact("expected", required));
+                                    simpleFact("contents match, but order was wrong"), renderedFact("expected", required));
                         }
                     };
                 }
@@ -538,7 +606,7 @@ public class IterableSubject extends Subject {
         List<Fact> facts = new ArrayList<>();
         facts.addAll(
                 makeElementFactsForBoth("missing", missingRawObjects, "unexpected", extraRawObjects));
-        facts.add(fact("expected", required));
+        facts.add(renderedFact("expected", required));
         facts.add(butWas());
         if (addElementsInWarning) {
             facts.add(
@@ -557,18 +625,28 @@ public class IterableSubject extends Subject {
             Collection<?> firstCollection,
             String secondKey,
             Collection<?> secondCollection) {
+        return makeElementFactsForBoth(
+                new RenderingContext(), firstKey, firstCollection, secondKey, secondCollection);
+    }
+
+    private static List<Fact> makeElementFactsForBoth(
+            RenderingContext context,
+            String firstKey,
+            Collection<?> firstCollection,
+            String secondKey,
+            Collection<?> secondCollection) {
         // TODO(kak): Possible enhancement: Include "[1 copy]" if the element does appear in
         // the subject but not enough times. Similarly for unexpected extra items.
-        boolean addTypeInfo = hasMatchingToStringPair(firstCollection, secondCollection);
+        boolean addTypeInfo = hasMatchingToStringPair(context, firstCollection, secondCollection);
         DuplicateGroupedAndTyped first =
-                countDuplicatesAndMaybeAddTypeInfoReturnObject(firstCollection, addTypeInfo);
+                countDuplicatesAndMaybeAddTypeInfoReturnObject(context, firstCollection, addTypeInfo);
         DuplicateGroupedAndTyped second =
-                countDuplicatesAndMaybeAddTypeInfoReturnObject(secondCollection, addTypeInfo);
-        ElementFactGrouping grouping = pickGrouping(first.entrySet(), second.entrySet());
+                countDuplicatesAndMaybeAddTypeInfoReturnObject(context, secondCollection, addTypeInfo);
+        ElementFactGrouping grouping = pickGrouping(context, first.entrySet(), second.entrySet());
 
         List<Fact> facts = new ArrayList<>();
-        List<Fact> firstFacts = makeElementFacts(firstKey, first, grouping);
-        List<Fact> secondFacts = makeElementFacts(secondKey, second, grouping);
+        List<Fact> firstFacts = makeElementFacts(context, firstKey, first, grouping);
+        List<Fact> secondFacts = makeElementFacts(context, secondKey, second, grouping);
         facts.addAll(firstFacts);
         if (firstFacts.size() > 1 && secondFacts.size() > 1) {
             facts.add(simpleFact(""));
@@ -583,7 +661,10 @@ public class IterableSubject extends Subject {
      * grouping policy) describing the given missing, unexpected, or near-miss elements.
      */
     private static List<Fact> makeElementFacts(
-            String label, DuplicateGroupedAndTyped elements, ElementFactGrouping grouping) {
+            RenderingContext context,
+            String label,
+            DuplicateGroupedAndTyped elements,
+            ElementFactGrouping grouping) {
         if (elements.isEmpty()) {
             return List.of();
         }
@@ -598,7 +679,7 @@ public class IterableSubject extends Subject {
         for (Map.Entry<?, Integer> entry : elements.entrySet().entrySet()) {
             int count = entry.getValue();
             Object item = entry.getKey();
-            facts.add(fact(numberString(n, count), item));
+            facts.add(fact(numberString(n, count), context.stringValueOf(item)));
             n += count;
         }
         return facts;
@@ -638,25 +719,27 @@ public class IterableSubject extends Subject {
     }
 
     private static ElementFactGrouping pickGrouping(
-            Map<?, Integer> first, Map<?, Integer> second) {
+            RenderingContext context, Map<?, Integer> first, Map<?, Integer> second) {
         boolean firstHasMultiple = hasMultiple(first);
         boolean secondHasMultiple = hasMultiple(second);
-        if ((firstHasMultiple || secondHasMultiple) && anyContainsCommaOrNewline(first, second)) {
+        if ((firstHasMultiple || secondHasMultiple)
+                && anyContainsCommaOrNewline(context, first, second)) {
             return FACT_PER_ELEMENT;
         }
-        if (firstHasMultiple && containsEmptyOrLong(first)) {
+        if (firstHasMultiple && containsEmptyOrLong(context, first)) {
             return FACT_PER_ELEMENT;
         }
-        if (secondHasMultiple && containsEmptyOrLong(second)) {
+        if (secondHasMultiple && containsEmptyOrLong(context, second)) {
             return FACT_PER_ELEMENT;
         }
         return ALL_IN_ONE_FACT;
     }
 
-    private static boolean anyContainsCommaOrNewline(Map<?, Integer>... lists) {
+    private static boolean anyContainsCommaOrNewline(
+            RenderingContext context, Map<?, Integer>... lists) {
         for (Map<?, Integer> list : lists) {
             for (Map.Entry<?, Integer> entry : list.entrySet()) {
-                String s = String.valueOf(entry.getKey());
+                String s = context.stringValueOf(entry.getKey());
                 if (s.contains("\n") || s.contains(",")) {
                     return true;
                 }
@@ -676,10 +759,11 @@ public class IterableSubject extends Subject {
         return false;
     }
 
-    private static boolean containsEmptyOrLong(Map<?, Integer> entries) {
+    private static boolean containsEmptyOrLong(
+            RenderingContext context, Map<?, Integer> entries) {
         int totalLength = 0;
         for (Map.Entry<?, Integer> entry : entries.entrySet()) {
-            String s = entryString(entry.getKey(), entry.getValue());
+            String s = entryString(context, entry.getKey(), entry.getValue());
             if (s.isEmpty()) {
                 return true;
             }
@@ -714,11 +798,22 @@ public class IterableSubject extends Subject {
      * elements equal any of the excluded.)
      */
     public final void containsNoneIn(Collection<?> excluded) {
-        Collection<?> actual = iterableToCollection(this.actual);
-        Collection<Object> present = new ArrayList<>();
-        for (Object item : new LinkedHashSet<>(excluded)) {
-            if (actual.contains(item)) {
-                present.add(item);
+        containsNoneIn(excluded, commonSortOrder(excluded));
+    }
+
+    private void containsNoneIn(Collection<?> excluded, Comparator<Object> sortedBy) {
+        SortedMerge merge =
+                sortedBy == null ? null : SortedMerge.merge(elements(), excluded, sortedBy, false);
+        Collection<Object> present;
+        if (merge != null) {
+            present = merge.foundDistinct();
+        } else {
+            Collection<?> actual = elements();
+            present = new ArrayList<>();
+            for (Object item : new LinkedHashSet<>(excluded)) {
+                if (actual.contains(item)) {
+                    present.add(item);
+                }
             }
         }
         if (!present.isEmpty()) {
@@ -835,7 +930,7 @@ public class IterableSubject extends Subject {
     }
 
     private void pairwiseCheck(String expectedFact, PairwiseChecker checker) {
-        Iterator<?> iterator = actual.iterator();
+        Iterator<?> iterator = elements().iterator();
         if (iterator.hasNext()) {
             Object prev = iterator.next();
             while (iterator.hasNext()) {
@@ -889,6 +984,30 @@ public class IterableSubject extends Subject {
         }
     }
 
+    /**
+     * Returns the comparator by which both the actual iterable and the given one are sorted, if they
+     * are both {@link SortedSet}s with the same comparator, or else {@code null}.
+     */
+    @SuppressWarnings("unchecked") // a SortedSet's comparator accepts all of its elements
+    private Comparator<Object> commonSortOrder(Iterable<?> expected) {
+        if (!(actual instanceof SortedSet) || !(expected instanceof SortedSet)) {
+            return null;
+        }
+        Comparator<?> comparator = ((SortedSet<?>) actual).comparator();
+        if (!Objects.equals(comparator, ((SortedSet<?>) expected).comparator())) {
+            return null;
+        }
+        return comparator == null
+                ? (Comparator<Object>) (Comparator<?>) Comparator.naturalOrder()
+                : (Comparator<Object>) comparator;
+    }
+
+    private static Fact nearMissSearchIncomplete() {
+        return simpleFact(
+                "(stopped looking for elements with the same string representation as expected ones,"
+                        + " because the iterable is too large)");
+    }
+
     private Fact fullContents() {
         return fact("full contents", actualCustomStringRepresentationForPackageMembersToCall());
     }
@@ -949,6 +1068,177 @@ public class IterableSubject extends Subject {
         return comparingElementsUsing(Correspondence.<T>equality().formattingDiffsUsing(formatter));
     }
 
+    /**
+     * Starts a method chain for a check in which both the actual elements and the expected elements
+     * are known to be sorted by the given comparator. The check is actually executed by continuing
+     * the method chain. For example:
+     *
+     * <pre>{@code
+     * assertThat(actualRows).assumingSortedBy(BY_ID).containsExactlyElementsIn(expectedRows);
+     * }</pre>
+     *
+     * <p>The result is the same as without this call: the elements are still compared with {@code
+     * equals}. But if the assumption holds, the check is a single merge of the sorted elements, which
+     * calls neither {@code hashCode} nor {@code equals} on elements which the comparator tells apart.
+     * If the elements turn out not to be sorted, or the comparator considers elements the same which
+     * aren't equal, the check silently falls back to the general algorithm. Both actual and expected
+     * {@link SortedSet}s with the same comparator get the merge even without this call.
+     */
+    public final SortedBy assumingSortedBy(Comparator<?> comparator) {
+        @SuppressWarnings("unchecked") // a ClassCastException makes the check fall back
+        Comparator<Object> sortedBy = (Comparator<Object>) requireNonNull(comparator);
+        return new SortedBy(this, sortedBy);
+    }
+
+    /**
+     * A partially specified check in which both the actual elements and the expected elements are
+     * known to be sorted by a comparator. Call methods on this object to actually execute the check.
+     */
+    public static final class SortedBy {
+        private final IterableSubject subject;
+        private final Comparator<Object> comparator;
+
+        SortedBy(IterableSubject subject, Comparator<Object> comparator) {
+            this.subject = requireNonNull(subject);
+            this.comparator = requireNonNull(comparator);
+        }
+
+        /**
+         * Checks that the subject contains exactly the provided objects or fails, like {@link
+         * IterableSubject#containsExactlyElementsIn(Iterable)}.
+         */
+        public Ordered containsExactlyElementsIn(Iterable<?> expected) {
+            return subject.containsExactlyElementsIn(expected, false, comparator);
+        }
+
+        /**
+         * Checks that the actual iterable contains at least all of the expected elements or fails,
+         * like {@link IterableSubject#containsAtLeastElementsIn(Collection)}.
+         */
+        public Ordered containsAtLeastElementsIn(Collection<?> expected) {
+            return subject.containsAtLeastElementsIn(expected, comparator);
+        }
+
+        /**
+         * Checks that the actual iterable contains none of the elements contained in the excluded
+         * collection or fails, like {@link IterableSubject#containsNoneIn(Collection)}.
+         */
+        public void containsNoneIn(Collection<?> excluded) {
+            subject.containsNoneIn(excluded, comparator);
+        }
+    }
+
+    /**
+     * Starts a method chain for a check which applies an assertion to each element of the {@link
+     * Iterable} under test. The check is actually executed by continuing the method chain. For
+     * example:
+     *
+     * <pre>{@code
+     * assertThat(actualRecords).eachElement().satisfy((Record r) -> assertThat(r.id()).isAtLeast(0));
+     * }</pre>
+     *
+     * <p>Unlike a loop of assertions, the check reports every element which doesn't satisfy the
+     * assertion, not only the first one.
+     */
+    public final EachElement eachElement() {
+        return new EachElement(this);
+    }
+
+    /**
+     * A partially specified check which applies an assertion to each element of the {@link Iterable}
+     * under test. Call {@link #satisfy} to actually execute the check.
+     */
+    public static final class EachElement {
+        // The largest number of failed elements described in the failure message.
+        private static final int MAX_REPORTED_FAILURES = 100;
+
+        // The number of elements from which on they are checked in parallel.
+        private static final int PARALLEL_THRESHOLD = 1 << 10;
+
+        private final IterableSubject subject;
+
+        EachElement(IterableSubject subject) {
+            this.subject = requireNonNull(subject);
+        }
+
+        /**
+         * Checks that the given assertion does not fail for any element. The assertion is expected to
+         * throw an {@link AssertionError} if an element doesn't satisfy it, as Truth's assertions do.
+         * If it throws for some elements, this check fails once, with the index, the value and the
+         * failure message of each of those elements. The errors of the described elements are added
+         * to the failure as {@linkplain Throwable#getSuppressed suppressed exceptions}.
+         *
+         * <p>If there are many elements, they are checked in parallel, in the {@linkplain
+         * java.util.concurrent.ForkJoinPool#commonPool common fork-join pool}. The assertion must
+         * therefore be safe to call from several threads at once, and in any order. Exceptions other
+         * than {@code AssertionError} are not caught.
+         *
+         * <p>This method may throw {@link ClassCastException} if it encounters an element that is not
+         * of type {@code T}.
+         */
+        public <T> void satisfy(Consumer<? super T> assertion) {
+            requireNonNull(assertion);
+            List<?> elements = randomAccessList(subject.elements());
+            IntStream indexes = IntStream.range(0, elements.size());
+            if (elements.size() >= PARALLEL_THRESHOLD) {
+                indexes = indexes.parallel();
+            }
+            List<ElementFailure> failures =
+                    indexes.mapToObj(i -> check(assertion, i, elements.get(i)))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+            if (failures.isEmpty()) {
+                return;
+            }
+            List<Fact> facts = new ArrayList<>();
+            facts.add(simpleFact("expected each element to satisfy the assertion"));
+            facts.add(
+                    fact("but failed for", failures.size() + " of " + elements.size() + " elements"));
+            int reported = min(failures.size(), MAX_REPORTED_FAILURES);
+            List<AssertionError> errors = new ArrayList<>(reported);
+            for (ElementFailure failure : failures.subList(0, reported)) {
+                facts.add(fact("element " + failure.index, failure.element));
+                facts.add(fact("which failed with", failure.error.getMessage()));
+                errors.add(failure.error);
+            }
+            if (failures.size() > reported) {
+                facts.add(simpleFact("(and " + (failures.size() - reported) + " more failures)"));
+            }
+            facts.add(subject.fullContents());
+            subject.failWithoutActual(facts, errors);
+        }
+
+        @SuppressWarnings("unchecked") // throwing ClassCastException is the correct behaviour
+        private static <T> ElementFailure check(
+                Consumer<? super T> assertion, int index, Object element) {
+            try {
+                assertion.accept((T) element);
+                return null;
+            } catch (AssertionError e) {
+                return new ElementFailure(index, element, e);
+            }
+        }
+
+        private static List<?> randomAccessList(Iterable<?> iterable) {
+            if (iterable instanceof List && iterable instanceof RandomAccess) {
+                return (List<?>) iterable;
+            }
+            return new ArrayList<>(iterableToCollection(iterable));
+        }
+    }
+
+    private static final class ElementFailure {
+        final int index;
+        final Object element;
+        final AssertionError error;
+
+        ElementFailure(int index, Object element, AssertionError error) {
+            this.index = index;
+            this.element = element;
+            this.error = error;
+        }
+    }
+
     /**
      * A partially specified check in which the actual elements (normally the elements of the {@link
      * Iterable} under test) are compared to expected elements using a {@link Correspondence}. The
@@ -1217,7 +1507,8 @@ public class IterableSubject extends Subject {
             // We know that every expected element maps to at least one actual element, and vice versa.
             // Find a maximal 1:1 mapping, and check it for completeness.
             Map<Integer, Integer> maximalOneToOneMapping =
-                    findMaximalOneToOneMapping(candidateMapping);
+                    findMaximalOneToOneMapping(
+                            candidateMapping, actualList.size(), expectedList.size());
             if (failIfOneToOneMappingHasMissingOrExtra(
                     actualList, expectedList, maximalOneToOneMapping, exceptions)) {
                 return ALREADY_FAILED;
@@ -1288,31 +1579,188 @@ public class IterableSubject extends Subject {
          * correspondence. Returns this mapping as a multimap where the keys are indexes into the actual
          * list and the values are indexes into the expected list. Any exceptions are treated as if the
          * elements did not correspond, and the exception added to the store.
-         * @return
+         *
+         * <p>If the correspondence was {@linkplain Correspondence#bucketedBy bucketed}, only pairs of
+         * elements with equal keys are compared. If it is a {@linkplain Correspondence#tolerance
+         * tolerance} correspondence and all the elements are non-null numbers, the candidates are
+         * found by sorting instead of by comparing every pair.
          */
         private Map<Integer, Set<Integer>> findCandidateMapping(
                 List<? extends A> actual,
                 List<? extends E> expected,
                 Correspondence.ExceptionStore exceptions) {
+            OptionalDouble tolerance = correspondence.numericTolerance();
+            if (tolerance.isPresent()) {
+                Map<Integer, Set<Integer>> mapping =
+                        findToleranceCandidateMapping(actual, expected, tolerance.getAsDouble());
+                if (mapping != null) {
+                    return mapping;
+                }
+            }
+            Correspondence.Bucketing<? super A, ? super E> bucketing = correspondence.bucketing();
+            if (bucketing != null) {
+                return findBucketedCandidateMapping(actual, expected, bucketing, exceptions);
+            }
             Map<Integer, Set<Integer>> mapping = new LinkedHashMap<>();
             for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
                 for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
-                    if (correspondence.safeCompare(
-                            actual.get(actualIndex), expected.get(expectedIndex), exceptions)) {
-                        int expi = expectedIndex;
-                        mapping.compute(actualIndex, (k, v) -> {
-                            if (v == null) {
-                                v = new LinkedHashSet<>();
-                            }
-                            v.add(expi);
-                            return v;
-                        });
+                    addCandidate(actual, expected, actualIndex, expectedIndex, mapping, exceptions);
+                }
+            }
+            return mapping;
+        }
+
+        /**
+         * Implementation of {@link #findCandidateMapping} for a bucketed correspondence. The expected
+         * elements are grouped by their keys, and each actual element is only compared with the
+         * expected elements in its group. An element whose key function throws is compared with every
+         * element on the other side.
+         */
+        private Map<Integer, Set<Integer>> findBucketedCandidateMapping(
+                List<? extends A> actual,
+                List<? extends E> expected,
+                Correspondence.Bucketing<? super A, ? super E> bucketing,
+                Correspondence.ExceptionStore exceptions) {
+            Map<Object, List<Integer>> expectedIndexesByKey = new HashMap<>();
+            List<Integer> unkeyedExpectedIndexes = new ArrayList<>();
+            for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+                try {
+                    Object key = bucketing.expectedKey(expected.get(expectedIndex));
+                    // The key's hashCode or equals may throw, too.
+                    expectedIndexesByKey
+                            .computeIfAbsent(key, k -> new ArrayList<>())
+                            .add(expectedIndex);
+                } catch (RuntimeException e) {
+                    unkeyedExpectedIndexes.add(expectedIndex);
+                }
+            }
+            Map<Integer, Set<Integer>> mapping = new LinkedHashMap<>();
+            for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
+                List<Integer> bucket;
+                try {
+                    bucket = expectedIndexesByKey.getOrDefault(
+                            bucketing.actualKey(actual.get(actualIndex)), List.of());
+                } catch (RuntimeException e) {
+                    for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+                        addCandidate(actual, expected, actualIndex, expectedIndex, mapping, exceptions);
+                    }
+                    continue;
+                }
+                for (int expectedIndex : bucket) {
+                    addCandidate(actual, expected, actualIndex, expectedIndex, mapping, exceptions);
+                }
+                for (int expectedIndex : unkeyedExpectedIndexes) {
+                    addCandidate(actual, expected, actualIndex, expectedIndex, mapping, exceptions);
+                }
+            }
+            return mapping;
+        }
+
+        /**
+         * Implementation of {@link #findCandidateMapping} for a tolerance correspondence, which gives
+         * the same mapping without comparing every pair. Both sides are sorted by value, and a window
+         * of the sorted expected values is swept along the sorted actual values: the expected values
+         * within the tolerance of an actual value are contiguous in sorted order, and the start of
+         * that run only moves forward. Infinite and NaN values correspond to nothing, so they are left
+         * out. Returns null if any element is not a non-null {@link Number}, in which case the caller
+         * should compare every pair, so that the exceptions are reported as usual.
+         */
+        private static Map<Integer, Set<Integer>> findToleranceCandidateMapping(
+                List<?> actual, List<?> expected, double tolerance) {
+            double[] actualValues = doubleValues(actual);
+            double[] expectedValues = doubleValues(expected);
+            if (actualValues == null || expectedValues == null) {
+                return null;
+            }
+            Integer[] actualOrder = finiteIndexesInOrder(actualValues);
+            Integer[] expectedOrder = finiteIndexesInOrder(expectedValues);
+            // Collect each edge as a long with the actual index in the high bits, so that sorting them
+            // recovers the order in which comparing every pair would have found them.
+            long[] edges = new long[Math.max(actualOrder.length, 16)];
+            int edgeCount = 0;
+            int windowStart = 0;
+            for (int actualIndex : actualOrder) {
+                double actualValue = actualValues[actualIndex];
+                while (windowStart < expectedOrder.length) {
+                    double expectedValue = expectedValues[expectedOrder[windowStart]];
+                    if (expectedValue >= actualValue
+                            || MathUtil.equalWithinTolerance(actualValue, expectedValue, tolerance)) {
+                        break;
                     }
+                    windowStart++;
+                }
+                for (int i = windowStart; i < expectedOrder.length; i++) {
+                    int expectedIndex = expectedOrder[i];
+                    if (!MathUtil.equalWithinTolerance(
+                            actualValue, expectedValues[expectedIndex], tolerance)) {
+                        break;
+                    }
+                    if (edgeCount == edges.length) {
+                        edges = Arrays.copyOf(edges, 2 * edgeCount);
+                    }
+                    edges[edgeCount++] = ((long) actualIndex << 32) | expectedIndex;
                 }
             }
+            Arrays.sort(edges, 0, edgeCount);
+            Map<Integer, Set<Integer>> mapping = new LinkedHashMap<>();
+            for (int i = 0; i < edgeCount; i++) {
+                mapping.computeIfAbsent((int) (edges[i] >>> 32), k -> new LinkedHashSet<>())
+                        .add((int) edges[i]);
+            }
             return mapping;
         }
 
+        /**
+         * Returns the double values of the given elements, or null if any of them is not a non-null
+         * {@link Number} or throws while converting.
+         */
+        private static double[] doubleValues(List<?> list) {
+            double[] values = new double[list.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object element = list.get(i);
+                if (!(element instanceof Number)) {
+                    return null;
+                }
+                try {
+                    values[i] = ((Number) element).doubleValue();
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }
+            return values;
+        }
+
+        /** Returns the indexes of the finite values, sorted by value. */
+        private static Integer[] finiteIndexesInOrder(double[] values) {
+            List<Integer> indexes = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (Double.isFinite(values[i])) {
+                    indexes.add(i);
+                }
+            }
+            Integer[] order = indexes.toArray(new Integer[0]);
+            Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+            return order;
+        }
+
+        /**
+         * Adds the pair of elements at the given indexes to the candidate mapping if they satisfy the
+         * correspondence. Any exception is treated as if the elements did not correspond, and the
+         * exception added to the store.
+         */
+        private void addCandidate(
+                List<? extends A> actual,
+                List<? extends E> expected,
+                int actualIndex,
+                int expectedIndex,
+                Map<Integer, Set<Integer>> mapping,
+                Correspondence.ExceptionStore exceptions) {
+            if (correspondence.safeCompare(
+                    actual.get(actualIndex), expected.get(expectedIndex), exceptions)) {
+                mapping.computeIfAbsent(actualIndex, k -> new LinkedHashSet<>()).add(expectedIndex);
+            }
+        }
+
         /**
          * Given a list of actual elements, a list of expected elements, and a many:many mapping between
          * actual and expected elements specified as a multimap of indexes into the actual list to
@@ -1455,10 +1903,11 @@ public class IterableSubject extends Subject {
          * elements. The input and output mappings are each described as a map or multimap where the
          * keys are indexes into the actual list and the values are indexes into the expected list. If
          * there are multiple possible output mappings tying for the largest possible, this returns an
-         * arbitrary one.
+         * arbitrary one. The sizes of the actual and expected lists are given by {@code actualCount}
+         * and {@code expectedCount}.
          */
         private Map<Integer, Integer> findMaximalOneToOneMapping(
-                Map<Integer, Set<Integer>> edges) {
+                Map<Integer, Set<Integer>> edges, int actualCount, int expectedCount) {
             /*
              * Finding this 1:1 mapping is analogous to finding a maximum cardinality bipartite matching
              * (https://en.wikipedia.org/wiki/Matching_(graph_theory)#In_unweighted_bipartite_graphs).
@@ -1472,8 +1921,30 @@ public class IterableSubject extends Subject {
              * to the maximum cardinality matching.
              *
              * So we'll apply a standard algorithm for doing maximum cardinality bipartite matching.
+             * The vertices are already identified by indexes, so we can hand the edges over in the
+             * array form which the index-based implementation works on.
              */
-            return GraphMatching.maximumCardinalityBipartiteMatching(edges);
+            int[] edgeStarts = new int[actualCount + 1];
+            for (int actualIndex = 0; actualIndex < actualCount; actualIndex++) {
+                edgeStarts[actualIndex + 1] =
+                        edgeStarts[actualIndex] + edges.getOrDefault(actualIndex, Set.of()).size();
+            }
+            int[] edgeTargets = new int[edgeStarts[actualCount]];
+            for (Map.Entry<Integer, Set<Integer>> entry : edges.entrySet()) {
+                int edge = edgeStarts[entry.getKey()];
+                for (int expectedIndex : entry.getValue()) {
+                    edgeTargets[edge++] = expectedIndex;
+                }
+            }
+            int[] actualMatches = GraphMatching.maximumCardinalityBipartiteMatching(
+                    expectedCount, edgeStarts, edgeTargets);
+            Map<Integer, Integer> mapping = new LinkedHashMap<>();
+            for (int actualIndex = 0; actualIndex < actualCount; actualIndex++) {
+                if (actualMatches[actualIndex] != GraphMatching.UNMATCHED) {
+                    mapping.put(actualIndex, actualMatches[actualIndex]);
+                }
+            }
+            return mapping;
         }
 
         /**
@@ -1556,7 +2027,8 @@ public class IterableSubject extends Subject {
             // We know that every expected element maps to at least one actual element, and vice versa.
             // Find a maximal 1:1 mapping, and check it for completeness.
             Map<Integer, Integer> maximalOneToOneMapping =
-                    findMaximalOneToOneMapping(candidateMapping);
+                    findMaximalOneToOneMapping(
+                            candidateMapping, actualList.size(), expectedList.size());
             if (failIfOneToOneMappingHasMissing(
                     actualList, expectedList, maximalOneToOneMapping, exceptions)) {
                 return ALREADY_FAILED;
@@ -1931,7 +2403,7 @@ public class IterableSubject extends Subject {
 
         @SuppressWarnings("unchecked") // throwing ClassCastException is the correct behaviour
         private Iterable<A> getCastActual() {
-            return (Iterable<A>) subject.actual;
+            return (Iterable<A>) subject.elements();
         }
 
         // TODO(b/69154276): Consider commoning up some of the logic between IterableSubject.Pairer,
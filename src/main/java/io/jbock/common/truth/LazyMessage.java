@@ -15,14 +15,17 @@
  */
 package io.jbock.common.truth;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import static io.jbock.common.truth.Preconditions.checkArgument;
-
+/**
+ * A message given by a format string and its arguments, which is formatted only when an assertion
+ * fails. Most messages are never formatted, because most assertions pass.
+ *
+ * <p>A message which can't be formatted doesn't throw, since that would replace the assertion's
+ * own failure. Instead, it is rendered like Guava's {@code lenientFormat} does: the format string,
+ * followed by the arguments and a note about the problem.
+ */
 final class LazyMessage {
     private static final String PLACEHOLDER_ERR =
-            "Incorrect number of args (%d) for the given placeholders (%d) in string template:\"%s\"";
+            "incorrect number of args (%d) for the given placeholders (%d)";
 
     private final String format;
     private final Object[] args;
@@ -30,13 +33,45 @@ final class LazyMessage {
     LazyMessage(String format, Object... args) {
         this.format = format;
         this.args = args;
-        int placeholders = countPlaceholders(format);
-        checkArgument(placeholders == args.length, String.format(PLACEHOLDER_ERR, args.length, placeholders, format));
     }
 
     @Override
     public String toString() {
-        return String.format(format, args);
+        int placeholders = countPlaceholders(format);
+        if (placeholders != args.length) {
+            return lenientFormat(String.format(PLACEHOLDER_ERR, args.length, placeholders));
+        }
+        try {
+            return String.format(format, args);
+        } catch (RuntimeException e) {
+            // A bad conversion in the format string, or an argument whose toString() throws.
+            return lenientFormat("could not format: " + e);
+        }
+    }
+
+    private String lenientFormat(String problem) {
+        StringBuilder builder = new StringBuilder(format).append(" [");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(lenientToString(args[i]));
+        }
+        return builder.append("] (").append(problem).append(')').toString();
+    }
+
+    private static String lenientToString(Object object) {
+        try {
+            return String.valueOf(object);
+        } catch (RuntimeException e) {
+            return "<"
+                    + object.getClass().getName()
+                    + "@"
+                    + Integer.toHexString(System.identityHashCode(object))
+                    + " threw "
+                    + e.getClass().getName()
+                    + ">";
+        }
     }
 
     static int countPlaceholders(String template) {
@@ -52,12 +87,4 @@ final class LazyMessage {
         }
         return count;
     }
-
-    static List<String> evaluateAll(List<LazyMessage> messages) {
-        List<String> result = new ArrayList<>();
-        for (LazyMessage message : messages) {
-            result.add(message.toString());
-        }
-        return result;
-    }
 }
@@ -15,23 +15,24 @@
  */
 package io.jbock.common.truth;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.List;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toCollection;
+import static io.jbock.common.truth.SubjectUtils.accumulate;
 
 /**
  * Propositions for {@link LongStream} subjects.
  *
- * <p><b>Note:</b> the wrapped stream will be drained immediately into a private collection to
- * provide more readable failure messages. You should not use this class if you intend to leave the
- * stream un-consumed or if the stream is <i>very</i> large or infinite.
+ * <p><b>Note:</b> the elements of the wrapped stream are pulled only as far as each assertion
+ * needs them. For example, {@link #contains} stops at the first matching element, so it may be used
+ * on an infinite stream. Assertions like {@link #containsExactly} need all the elements, so you
+ * should not use them if the stream is <i>very</i> large or infinite. The pulled elements are kept
+ * for later assertions on the same subject and for failure messages, up to a limit, which can be
+ * changed with the system property {@code io.jbock.common.truth.stream.maxKeptElements}.
  *
- * <p>If you intend to make multiple assertions on the same stream of data you should instead first
+ * <p>If you intend to make multiple assertions on a large stream of data you should instead first
  * collect the contents of the stream into a collection, and then assert directly on that.
  *
  * <p>For very large or infinite streams you may want to first {@linkplain Stream#limit limit} the
@@ -41,17 +42,16 @@ import static java.util.stream.Collectors.toCollection;
  */
 public final class LongStreamSubject extends Subject {
 
-    private final List<?> actualList;
+    private final StreamElements elements;
 
     private LongStreamSubject(FailureMetadata failureMetadata, LongStream stream) {
         super(failureMetadata, stream);
-        this.actualList =
-                (stream == null) ? null : stream.boxed().collect(toCollection(ArrayList::new));
+        this.elements = (stream == null) ? null : new StreamElements(this, stream.iterator());
     }
 
     @Override
     protected String actualCustomStringRepresentation() {
-        return String.valueOf(actualList);
+        return (elements == null) ? ValueRenderer.DEFAULT.render(null) : elements.render();
     }
 
     public static Factory<LongStreamSubject, LongStream> longStreams() {
@@ -60,12 +60,12 @@ public final class LongStreamSubject extends Subject {
 
     /** Fails if the subject is not empty. */
     public void isEmpty() {
-        check().that(actualList).isEmpty();
+        elements.isEmpty();
     }
 
     /** Fails if the subject is empty. */
     public void isNotEmpty() {
-        check().that(actualList).isNotEmpty();
+        elements.isNotEmpty();
     }
 
     /**
@@ -75,33 +75,33 @@ public final class LongStreamSubject extends Subject {
      * elements, use {@code assertThat(stream.count()).isEqualTo(...)}.
      */
     public void hasSize(int expectedSize) {
-        check().that(actualList).hasSize(expectedSize);
+        elements.hasSize(expectedSize);
     }
 
     /** Fails if the subject does not contain the given element. */
     public void contains(long element) {
-        check().that(actualList).contains(element);
+        elements.contains(element);
     }
 
     /** Fails if the subject contains the given element. */
     public void doesNotContain(long element) {
-        check().that(actualList).doesNotContain(element);
+        elements.doesNotContain(element);
     }
 
     /** Fails if the subject contains duplicate elements. */
     public void containsNoDuplicates() {
-        check().that(actualList).containsNoDuplicates();
+        elements.all().containsNoDuplicates();
     }
 
     /** Fails if the subject does not contain at least one of the given elements. */
     @SuppressWarnings("GoodTime") // false positive; b/122617528
     public void containsAnyOf(long first, long second, long... rest) {
-        check().that(actualList).containsAnyOf(first, second, box(rest));
+        elements.containsAnyIn(accumulate(first, second, box(rest)));
     }
 
     /** Fails if the subject does not contain at least one of the given elements. */
     public void containsAnyIn(Iterable<?> expected) {
-        check().that(actualList).containsAnyIn(expected);
+        elements.containsAnyIn(expected);
     }
 
     /**
@@ -115,7 +115,7 @@ public final class LongStreamSubject extends Subject {
      */
     @SuppressWarnings("GoodTime") // false positive; b/122617528
     public Ordered containsAtLeast(long first, long second, long... rest) {
-        return check().that(actualList).containsAtLeast(first, second, box(rest));
+        return elements.all().containsAtLeast(first, second, box(rest));
     }
 
     /**
@@ -128,7 +128,7 @@ public final class LongStreamSubject extends Subject {
      * within the actual elements, but they are not required to be consecutive.
      */
     public Ordered containsAtLeastElementsIn(Collection<?> expected) {
-        return check().that(actualList).containsAtLeastElementsIn(expected);
+        return elements.all().containsAtLeastElementsIn(expected);
     }
 
     /**
@@ -141,7 +141,7 @@ public final class LongStreamSubject extends Subject {
      * on the object returned by this method.
      */
     public Ordered containsExactly(long... varargs) {
-        return check().that(actualList).containsExactly(box(varargs));
+        return elements.all().containsExactly(box(varargs));
     }
 
     /**
@@ -154,7 +154,7 @@ public final class LongStreamSubject extends Subject {
      * on the object returned by this method.
      */
     public Ordered containsExactlyElementsIn(Iterable<?> expected) {
-        return check().that(actualList).containsExactlyElementsIn(expected);
+        return elements.all().containsExactlyElementsIn(expected);
     }
 
     /**
@@ -163,7 +163,7 @@ public final class LongStreamSubject extends Subject {
      */
     @SuppressWarnings("GoodTime") // false positive; b/122617528
     public void containsNoneOf(long first, long second, long... rest) {
-        check().that(actualList).containsNoneOf(first, second, box(rest));
+        elements.containsNoneIn(accumulate(first, second, box(rest)));
     }
 
     /**
@@ -171,7 +171,7 @@ public final class LongStreamSubject extends Subject {
      * test, which fails if any of the actual elements equal any of the excluded.)
      */
     public void containsNoneIn(Collection<?> excluded) {
-        check().that(actualList).containsNoneIn(excluded);
+        elements.containsNoneIn(excluded);
     }
 
     /**
@@ -183,7 +183,7 @@ public final class LongStreamSubject extends Subject {
      * @throws NullPointerException if any element is null
      */
     public void isInStrictOrder() {
-        check().that(actualList).isInStrictOrder();
+        elements.all().isInStrictOrder();
     }
 
     /**
@@ -194,7 +194,7 @@ public final class LongStreamSubject extends Subject {
      * @throws ClassCastException if any pair of elements is not mutually Comparable
      */
     public void isInStrictOrder(Comparator<? super Long> comparator) {
-        check().that(actualList).isInStrictOrder(comparator);
+        elements.all().isInStrictOrder(comparator);
     }
 
     /**
@@ -205,7 +205,7 @@ public final class LongStreamSubject extends Subject {
      * @throws NullPointerException if any element is null
      */
     public void isInOrder() {
-        check().that(actualList).isInOrder();
+        elements.all().isInOrder();
     }
 
     /**
@@ -215,7 +215,7 @@ public final class LongStreamSubject extends Subject {
      * @throws ClassCastException if any pair of elements is not mutually Comparable
      */
     public void isInOrder(Comparator<? super Long> comparator) {
-        check().that(actualList).isInOrder(comparator);
+        elements.all().isInOrder(comparator);
     }
 
     private static Object[] box(long[] rest) {
@@ -32,7 +32,6 @@ import static io.jbock.common.truth.Fact.simpleFact;
 import static io.jbock.common.truth.Preconditions.checkArgument;
 import static io.jbock.common.truth.SubjectUtils.countDuplicatesAndAddTypeInfo;
 import static io.jbock.common.truth.SubjectUtils.hasMatchingToStringPair;
-import static io.jbock.common.truth.SubjectUtils.objectToTypeName;
 import static io.jbock.common.truth.SubjectUtils.retainMatchingToString;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
@@ -107,6 +106,7 @@ public class MapSubject extends Subject {
         if (!actual.entrySet().contains(entry)) {
             List<Object> keyList = singletonList(key);
             List<Object> valueList = singletonList(value);
+            RenderingContext context = new RenderingContext();
             if (actual.containsKey(key)) {
                 Object actualValue = actual.get(key);
                 /*
@@ -120,15 +120,17 @@ public class MapSubject extends Subject {
                 }
                 // See the comment on IterableSubject's use of failEqualityCheckForEqualsWithoutDescription.
                 check.that(actualValue).failEqualityCheckForEqualsWithoutDescription(value);
-            } else if (hasMatchingToStringPair(actual.keySet(), keyList)) {
+            } else if (hasMatchingToStringPair(context, actual.keySet(), keyList)) {
                 failWithoutActual(
                         fact("expected to contain entry", entry),
-                        fact("an instance of", objectToTypeName(entry)),
+                        fact("an instance of", context.typeName(entry)),
                         simpleFact("but did not"),
                         fact(
                                 "though it did contain keys",
                                 countDuplicatesAndAddTypeInfo(
-                                        retainMatchingToString(actual.keySet(), /* itemsToCheck= */ keyList))),
+                                        context,
+                                        retainMatchingToString(
+                                                context, actual.keySet(), /* itemsToCheck= */ keyList))),
                         fact("full contents", actualCustomStringRepresentationForPackageMembersToCall()));
             } else if (actual.containsValue(value)) {
                 Set<Object> keys = new LinkedHashSet<>();
@@ -142,15 +144,17 @@ public class MapSubject extends Subject {
                         simpleFact("but did not"),
                         fact("though it did contain keys with that value", keys),
                         fact("full contents", actualCustomStringRepresentationForPackageMembersToCall()));
-            } else if (hasMatchingToStringPair(actual.values(), valueList)) {
+            } else if (hasMatchingToStringPair(context, actual.values(), valueList)) {
                 failWithoutActual(
                         fact("expected to contain entry", entry),
-                        fact("an instance of", objectToTypeName(entry)),
+                        fact("an instance of", context.typeName(entry)),
                         simpleFact("but did not"),
                         fact(
                                 "though it did contain values",
                                 countDuplicatesAndAddTypeInfo(
-                                        retainMatchingToString(actual.values(), /* itemsToCheck= */ valueList))),
+                                        context,
+                                        retainMatchingToString(
+                                                context, actual.values(), /* itemsToCheck= */ valueList))),
                         fact("full contents", actualCustomStringRepresentationForPackageMembersToCall()));
             } else {
                 failWithActual("expected to contain entry", entry);
@@ -338,40 +342,41 @@ public class MapSubject extends Subject {
         }
 
         List<Fact> describe(Differ<? super A, ? super E> differ) {
-            boolean includeKeyTypes = includeKeyTypes();
+            RenderingContext context = new RenderingContext();
+            boolean includeKeyTypes = includeKeyTypes(context);
             List<Fact> facts = new ArrayList<>();
             if (!wrongValues.isEmpty()) {
                 facts.add(simpleFact("keys with wrong values"));
             }
             for (Map.Entry<K, ValueDifference<A, E>> entry : wrongValues.entrySet()) {
-                facts.add(fact("for key", maybeAddType(entry.getKey(), includeKeyTypes)));
-                facts.addAll(entry.getValue().describe(differ));
+                facts.add(fact("for key", maybeAddType(context, entry.getKey(), includeKeyTypes)));
+                facts.addAll(entry.getValue().describe(context, differ));
             }
             if (!missing.isEmpty()) {
                 facts.add(simpleFact("missing keys"));
             }
             for (Map.Entry<K, E> entry : missing.entrySet()) {
-                facts.add(fact("for key", maybeAddType(entry.getKey(), includeKeyTypes)));
+                facts.add(fact("for key", maybeAddType(context, entry.getKey(), includeKeyTypes)));
                 facts.add(fact("expected value", entry.getValue()));
             }
             if (!unexpected.isEmpty()) {
                 facts.add(simpleFact("unexpected keys"));
             }
             for (Map.Entry<K, A> entry : unexpected.entrySet()) {
-                facts.add(fact("for key", maybeAddType(entry.getKey(), includeKeyTypes)));
+                facts.add(fact("for key", maybeAddType(context, entry.getKey(), includeKeyTypes)));
                 facts.add(fact("unexpected value", entry.getValue()));
             }
             return facts;
         }
 
-        private boolean includeKeyTypes() {
+        private boolean includeKeyTypes(RenderingContext context) {
             // We will annotate all the keys in the diff with their types if any of the keys involved have
             // the same toString() without being equal.
             Set<K> keys = new HashSet<>();
             keys.addAll(missing.keySet());
             keys.addAll(unexpected.keySet());
             keys.addAll(wrongValues.keySet());
-            return hasMatchingToStringPair(keys, allKeys);
+            return hasMatchingToStringPair(context, keys, allKeys);
         }
     }
 
@@ -384,12 +389,13 @@ public class MapSubject extends Subject {
             this.expected = expected;
         }
 
-        List<Fact> describe(Differ<? super A, ? super E> differ) {
+        List<Fact> describe(RenderingContext context, Differ<? super A, ? super E> differ) {
             boolean includeTypes =
-                    differ == null && String.valueOf(actual).equals(String.valueOf(expected));
+                    differ == null
+                            && context.stringValueOf(actual).equals(context.stringValueOf(expected));
             List<Fact> facts = new ArrayList<>();
-            facts.add(fact("expected value", maybeAddType(expected, includeTypes)));
-            facts.add(fact("but got value", maybeAddType(actual, includeTypes)));
+            facts.add(fact("expected value", maybeAddType(context, expected, includeTypes)));
+            facts.add(fact("but got value", maybeAddType(context, actual, includeTypes)));
 
             if (differ != null) {
                 String diffString = differ.diff(actual, expected);
@@ -401,10 +407,11 @@ public class MapSubject extends Subject {
         }
     }
 
-    private static String maybeAddType(Object object, boolean includeTypes) {
+    private static String maybeAddType(
+            RenderingContext context, Object object, boolean includeTypes) {
         return includeTypes
-                ? String.format("%s (%s)", object, objectToTypeName(object))
-                : String.valueOf(object);
+                ? context.stringValueOf(object) + " (" + context.typeName(object) + ")"
+                : context.stringValueOf(object);
     }
 
     private class MapInOrder implements Ordered {
@@ -15,12 +15,63 @@
  */
 package io.jbock.common.truth;
 
+import io.jbock.common.truth.ComparisonFailures.DiffBudget;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.List;
+
+import static io.jbock.common.truth.Fact.fact;
+import static io.jbock.common.truth.Platform.makeDiff;
+import static io.jbock.common.truth.SubjectUtils.concat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /** Assertions for {@link Path} instances. */
 public final class PathSubject extends Subject {
+    private final Path actual;
+
     private PathSubject(FailureMetadata failureMetadata, Path actual) {
         super(failureMetadata, actual);
+        this.actual = actual;
+    }
+
+    /**
+     * Fails if the file at the subject's path doesn't have the same lines as the file at {@code
+     * expected}, when both are read as UTF-8. Line terminators are not compared.
+     *
+     * <p>The files are streamed rather than read into memory, so this also works for very large
+     * files. Only the lines which differ are kept in memory, to show their diff in the failure
+     * message.
+     *
+     * @throws UncheckedIOException if either file cannot be read
+     */
+    public void hasSameContentAs(Path expected) {
+        hasSameContentAs(expected, UTF_8);
+    }
+
+    /**
+     * Fails if the file at the subject's path doesn't have the same lines as the file at {@code
+     * expected}, when both are read with the given charset. Line terminators are not compared.
+     *
+     * @throws UncheckedIOException if either file cannot be read
+     */
+    public void hasSameContentAs(Path expected, Charset charset) {
+        if (actual == null) {
+            failWithActual("expected a file with the same content as", expected);
+            return;
+        }
+        List<Fact> diff;
+        try {
+            diff = makeDiff(expected, actual, charset, DiffBudget.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!diff.isEmpty()) {
+            failWithActual(
+                    concat(List.of(fact("expected to have the same content as", expected)), diff));
+        }
     }
 
     public static Subject.Factory<PathSubject, Path> paths() {
@@ -15,16 +15,23 @@
  */
 package io.jbock.common.truth;
 
+import io.jbock.common.truth.ComparisonFailures.DiffBudget;
+
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import static io.jbock.common.truth.DiffUtils.generateUnifiedDiff;
 import static io.jbock.common.truth.Fact.fact;
+import static io.jbock.common.truth.Fact.simpleFact;
 
 /**
  * Extracted routines that need to be swapped in for GWT, to allow for minimal deltas between the
@@ -58,11 +65,22 @@ final class Platform {
 
     private static final String DIFF_KEY = "diff (-expected +actual)";
 
-    static List<Fact> makeDiff(String expected, String actual) {
-        List<String> expectedLines = splitLines(expected);
-        List<String> actualLines = splitLines(actual);
+    static List<Fact> makeDiff(String expected, String actual, DiffBudget budget) {
+        // Count the lines before splitting, so that values with too many lines are never split.
+        if (hasMoreLinesThan(expected, budget.maxLines)
+                || hasMoreLinesThan(actual, budget.maxLines)) {
+            return null;
+        }
         List<String> unifiedDiff =
-                generateUnifiedDiff(expectedLines, actualLines, /* contextSize= */ 3);
+                generateUnifiedDiff(
+                        splitLines(expected),
+                        splitLines(actual),
+                        /* contextSize= */ 3,
+                        budget.maxEdits,
+                        budget.timeoutNanos);
+        if (unifiedDiff == null) {
+            return null;
+        }
         if (unifiedDiff.isEmpty()) {
             return List.of(
                     fact(DIFF_KEY, "(line contents match, but line-break characters differ)"));
@@ -75,14 +93,51 @@ final class Platform {
         return List.of(fact(DIFF_KEY, result));
     }
 
+    /**
+     * Returns the facts describing the difference between the lines of the given files, or an empty
+     * list if the files have the same lines. The files are streamed, and only the lines which differ
+     * are kept in memory.
+     */
+    static List<Fact> makeDiff(Path expected, Path actual, Charset charset, DiffBudget budget)
+            throws IOException {
+        List<String> unifiedDiff =
+                generateUnifiedDiff(
+                        expected,
+                        actual,
+                        charset,
+                        /* contextSize= */ 3,
+                        budget.maxLines,
+                        budget.maxEdits,
+                        budget.timeoutNanos);
+        if (unifiedDiff == null) {
+            return List.of(simpleFact("(diff omitted because it is too large)"));
+        }
+        if (unifiedDiff.isEmpty()) {
+            return List.of();
+        }
+        return List.of(fact(DIFF_KEY, String.join("\n", unifiedDiff)));
+    }
+
+    /**
+     * Returns whether {@link #splitLines} would return more than {@code maxLines} lines for the
+     * given string. This only looks at the first {@code maxLines} line breaks.
+     */
+    private static boolean hasMoreLinesThan(String s, int maxLines) {
+        int lines = 1;
+        for (int i = s.indexOf('\n'); i != -1; i = s.indexOf('\n', i + 1)) {
+            if (++lines > maxLines) {
+                return true;
+            }
+        }
+        return lines > maxLines;
+    }
+
     private static List<String> splitLines(String s) {
         // splitToList is @Beta, so we avoid it.
         return Arrays.asList(s.split("\r?\n", -1));
     }
 
     abstract static class PlatformComparisonFailure extends AssertionError {
-        private final String message;
-
         /*
          * We have to use the f prefix until the next major release to ensure
          * serialization compatibility.
@@ -94,9 +149,11 @@ final class Platform {
         /** Separate cause field, in case initCause() fails. */
         private final Throwable cause;
 
+        /** Whether our constructor has run, after which {@link #fillInStackTrace} works as usual. */
+        private boolean initialized;
+
         PlatformComparisonFailure(
-                String message, String expected, String actual, Throwable cause) {
-            this.message = message;
+                String expected, String actual, Throwable cause, boolean fullStackTrace) {
             this.cause = cause;
             this.fActual = actual;
             this.fExpected = expected;
@@ -106,13 +163,24 @@ final class Platform {
             } catch (IllegalStateException alreadyInitializedBecauseOfHarmonyBug) {
                 // See Truth.SimpleAssertionError.
             }
+            if (fullStackTrace) {
+                super.fillInStackTrace();
+            } else {
+                setStackTrace(callSite());
+            }
+            initialized = true;
         }
 
         @Override
-        public final String getMessage() {
-            return message;
+        @SuppressWarnings("UnsynchronizedOverridesSynchronized")
+        public Throwable fillInStackTrace() {
+            // The superclass constructor calls this before we know which stack trace we want.
+            return initialized ? super.fillInStackTrace() : this;
         }
 
+        @Override
+        public abstract String getMessage();
+
         /**
          * Returns the actual string value
          *
@@ -155,7 +223,7 @@ final class Platform {
 
     /** Turns a non-double, non-float object into a string. */
     static String stringValueOfNonFloatingPoint(Object o) {
-        return String.valueOf(o);
+        return ValueRenderer.DEFAULT.render(o);
     }
 
     /** Returns a human readable string representation of the throwable's stack trace. */
@@ -165,64 +233,108 @@ final class Platform {
         return stringWriter.toString();
     }
 
+    private static final StackWalker STACK_WALKER =
+            StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    /**
+     * Returns a stack trace consisting of only the innermost frame outside of Truth, which is the call
+     * site of the assertion, or an empty stack trace if there is no such frame.
+     */
+    static StackTraceElement[] callSite() {
+        return STACK_WALKER.walk(
+                frames ->
+                        frames
+                                .filter(frame -> !isTruthClass(frame.getDeclaringClass()))
+                                .findFirst()
+                                .map(frame -> new StackTraceElement[] {frame.toStackTraceElement()})
+                                .orElse(new StackTraceElement[0]));
+    }
+
+    /**
+     * Returns whether the class belongs to Truth itself. Classes from other code sources, such as
+     * Truth's own tests, may share its package, so we compare protection domains, too.
+     */
+    private static boolean isTruthClass(Class<?> clazz) {
+        return clazz.getPackageName().equals(Platform.class.getPackageName())
+                && clazz.getProtectionDomain() == Platform.class.getProtectionDomain();
+    }
+
     static AssertionError makeComparisonFailure(
             List<String> messages,
             List<Fact> facts,
             String expected,
             String actual,
-            Throwable cause) {
-        Class<?> comparisonFailureClass;
-        try {
-            comparisonFailureClass = Class.forName("io.jbock.common.truth.ComparisonFailureWithFacts");
-        } catch (LinkageError | ClassNotFoundException probablyJunitNotOnClasspath) {
-            /*
-             * LinkageError makes sense, but ClassNotFoundException shouldn't happen:
-             * ComparisonFailureWithFacts should be there, even if its JUnit 4 dependency is not. But it's
-             * harmless to catch an "impossible" exception, and if someone decides to strip the class out
-             * (perhaps along with Platform.PlatformComparisonFailure, to satisfy a tool that is unhappy
-             * because it can't find the latter's superclass because JUnit 4 is also missing?), presumably
-             * we should still fall back to a plain AssertionError.
-             *
-             * TODO(cpovirk): Consider creating and using yet another class like AssertionErrorWithFacts,
-             * not actually extending ComparisonFailure but still exposing getExpected() and getActual()
-             * methods.
-             */
-            return new AssertionErrorWithFacts(messages, facts, cause);
-        }
-        Class<? extends AssertionError> asAssertionErrorSubclass =
-                comparisonFailureClass.asSubclass(AssertionError.class);
-
-        Constructor<? extends AssertionError> constructor;
+            Throwable cause,
+            boolean fullStackTrace) {
+        MethodHandle constructor = ComparisonFailureConstructor.INSTANCE;
+        if (constructor == null) {
+            return new AssertionErrorWithFacts(messages, facts, cause, fullStackTrace);
+        }
         try {
-            constructor =
-                    asAssertionErrorSubclass.getDeclaredConstructor(
-                            List.class,
-                            List.class,
-                            String.class,
-                            String.class,
-                            Throwable.class);
-        } catch (NoSuchMethodException e) {
-            // That constructor exists.
+            return (AssertionError)
+                    constructor.invokeExact(
+                            messages, facts, expected, actual, cause, fullStackTrace);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // That constructor has no `throws` clause.
             throw newLinkageError(e);
         }
+    }
 
-        try {
-            return constructor.newInstance(messages, facts, expected, actual, cause);
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
+    /**
+     * Holds the constructor of {@code ComparisonFailureWithFacts}, which we look up only once,
+     * because failures are created in a loop by some tests, such as ones using {@code
+     * ExpectFailure}.
+     */
+    private static final class ComparisonFailureConstructor {
+        /**
+         * The constructor as a method handle of type {@code (List, List, String, String, Throwable,
+         * boolean) AssertionError}, or null if {@code ComparisonFailureWithFacts} can't be loaded.
+         */
+        static final MethodHandle INSTANCE = find();
+
+        private static MethodHandle find() {
+            Class<?> comparisonFailureClass;
+            try {
+                comparisonFailureClass =
+                        Class.forName("io.jbock.common.truth.ComparisonFailureWithFacts");
+            } catch (LinkageError | ClassNotFoundException probablyJunitNotOnClasspath) {
+                /*
+                 * LinkageError makes sense, but ClassNotFoundException shouldn't happen:
+                 * ComparisonFailureWithFacts should be there, even if its JUnit 4 dependency is
+                 * not. But it's harmless to catch an "impossible" exception, and if someone decides
+                 * to strip the class out (perhaps along with Platform.PlatformComparisonFailure, to
+                 * satisfy a tool that is unhappy because it can't find the latter's superclass
+                 * because JUnit 4 is also missing?), presumably we should still fall back to a
+                 * plain AssertionError.
+                 *
+                 * TODO(cpovirk): Consider creating and using yet another class like
+                 * AssertionErrorWithFacts, not actually extending ComparisonFailure but still
+                 * exposing getExpected() and getActual() methods.
+                 */
+                return null;
             }
-            if (e.getCause() instanceof Error) {
-                throw (Error) e.getCause();
+            MethodType type =
+                    MethodType.methodType(
+                            void.class,
+                            List.class,
+                            List.class,
+                            String.class,
+                            String.class,
+                            Throwable.class,
+                            boolean.class);
+            try {
+                return MethodHandles.lookup()
+                        .findConstructor(comparisonFailureClass, type)
+                        .asType(type.changeReturnType(AssertionError.class));
+            } catch (NoSuchMethodException e) {
+                // That constructor exists.
+                throw newLinkageError(e);
+            } catch (IllegalAccessException e) {
+                // We're accessing a class from within its package.
+                throw newLinkageError(e);
             }
-            // That constructor has no `throws` clause.
-            throw newLinkageError(e);
-        } catch (InstantiationException e) {
-            // The class is a concrete class.
-            throw newLinkageError(e);
-        } catch (IllegalAccessException e) {
-            // We're accessing a class from within its package.
-            throw newLinkageError(e);
         }
     }
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static io.jbock.common.truth.SubjectUtils.objectToTypeName;
+
+/**
+ * Remembers the string forms and type names of the objects rendered while building the message of
+ * a single failure. Building a message about a collection looks at each element several times: to
+ * find elements with the same string form, to pick a layout and to render the facts. With a
+ * context, each element's {@code toString()} is called at most once.
+ *
+ * <p>Objects are remembered by identity, so that we never call {@code equals} or {@code hashCode},
+ * which may be broken or slow for the very objects that make an assertion fail. A context must not
+ * outlive the failure it was created for, because the string form of a mutable object may change.
+ */
+final class RenderingContext {
+    private final Map<Object, String> strings = new IdentityHashMap<>();
+    private final Map<Class<?>, String> typeNames = new HashMap<>();
+
+    /** Returns {@code String.valueOf(object)}, calling {@code toString()} only the first time. */
+    String stringValueOf(Object object) {
+        if (object == null) {
+            return "null";
+        }
+        String result = strings.get(object);
+        if (result == null) {
+            result = String.valueOf(object);
+            strings.put(object, result);
+        }
+        return result;
+    }
+
+    /** Returns the same as {@link SubjectUtils#objectToTypeName}, looking up each class only once. */
+    String typeName(Object object) {
+        if (object == null || object instanceof Map.Entry) {
+            // A Map.Entry's type name depends on its key and value, not only on its class.
+            return objectToTypeName(object);
+        }
+        return typeNames.computeIfAbsent(object.getClass(), Class::getName);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compares the actual and the expected elements in a single merge pass, if both are sorted by the
+ * same comparator. This needs no hashing, and finds the same missing and extra elements as the
+ * general algorithms of {@link IterableSubject}, in the same order.
+ *
+ * <p>We check that the elements really are sorted as we go. We also check that the comparator
+ * agrees with {@code equals}, because the checks are defined in terms of {@code equals}. If either
+ * check fails, or the comparator throws, like {@code naturalOrder()} does for a {@code null}
+ * element, {@link #merge} returns {@code null}, and the caller falls back to the general algorithm.
+ */
+final class SortedMerge {
+    private final List<Object> missing = new ArrayList<>();
+    private final List<Object> extra = new ArrayList<>();
+    private final List<Object> found = new ArrayList<>();
+
+    private SortedMerge() {
+    }
+
+    /**
+     * Merges the actual and the expected elements. If {@code exact} is false, we stop when the
+     * expected elements are exhausted, and don't collect the extra elements.
+     *
+     * @return the result of the merge, or {@code null} if the elements are not sorted by the
+     *     comparator, the comparator is not consistent with {@code equals}, or it throws
+     */
+    static SortedMerge merge(
+            Iterable<?> actual,
+            Iterable<?> expected,
+            Comparator<Object> comparator,
+            boolean exact) {
+        try {
+            return doMerge(actual, expected, comparator, exact);
+        } catch (RuntimeException e) {
+            // The comparator doesn't apply to some element, like a null or an element of another
+            // type, so the elements can't be sorted by it.
+            return null;
+        }
+    }
+
+    private static SortedMerge doMerge(
+            Iterable<?> actual,
+            Iterable<?> expected,
+            Comparator<Object> comparator,
+            boolean exact) {
+        SortedMerge result = new SortedMerge();
+        Input actualInput = new Input(actual.iterator(), comparator);
+        Input expectedInput = new Input(expected.iterator(), comparator);
+        while (actualInput.hasCurrent && expectedInput.hasCurrent) {
+            int comparison = comparator.compare(actualInput.current, expectedInput.current);
+            if (comparison < 0) {
+                if (exact) {
+                    result.extra.add(actualInput.current);
+                }
+                actualInput.advance();
+            } else if (comparison > 0) {
+                result.missing.add(expectedInput.current);
+                expectedInput.advance();
+            } else if (Objects.equals(actualInput.current, expectedInput.current)) {
+                result.found.add(expectedInput.current);
+                actualInput.advance();
+                expectedInput.advance();
+            } else {
+                return null;
+            }
+            if (!actualInput.sorted || !expectedInput.sorted) {
+                return null;
+            }
+        }
+        while (expectedInput.hasCurrent) {
+            result.missing.add(expectedInput.current);
+            expectedInput.advance();
+        }
+        while (exact && actualInput.hasCurrent) {
+            result.extra.add(actualInput.current);
+            actualInput.advance();
+        }
+        if (!actualInput.sorted || !expectedInput.sorted) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Returns the expected elements without an equal actual element, in their original order. */
+    List<Object> missing() {
+        return missing;
+    }
+
+    /**
+     * Returns the actual elements without an equal expected element, in their original order. This
+     * is only computed for an exact merge.
+     */
+    List<Object> extra() {
+        return extra;
+    }
+
+    /**
+     * Returns the expected elements which have an equal actual element, in their original order
+     * and without duplicates.
+     */
+    List<Object> foundDistinct() {
+        List<Object> result = new ArrayList<>();
+        for (Object element : found) {
+            // Equal elements are adjacent, since the comparator is consistent with equals.
+            if (result.isEmpty() || !Objects.equals(result.get(result.size() - 1), element)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /** Returns whether there was exactly one actual and one expected element, and they differ. */
+    boolean singleMismatch() {
+        return found.isEmpty() && missing.size() == 1 && extra.size() == 1;
+    }
+
+    /** One of the inputs of the merge, which checks that its elements are sorted. */
+    private static final class Input {
+        private final Iterator<?> iterator;
+        private final Comparator<Object> comparator;
+        Object current;
+        boolean hasCurrent;
+        boolean sorted = true;
+
+        Input(Iterator<?> iterator, Comparator<Object> comparator) {
+            this.iterator = iterator;
+            this.comparator = comparator;
+            advance();
+        }
+
+        void advance() {
+            if (!iterator.hasNext()) {
+                hasCurrent = false;
+                return;
+            }
+            Object next = iterator.next();
+            if (hasCurrent) {
+                int comparison = comparator.compare(current, next);
+                if (comparison > 0 || (comparison == 0 && !Objects.equals(current, next))) {
+                    sorted = false;
+                }
+            }
+            current = next;
+            hasCurrent = true;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import static io.jbock.common.truth.Fact.fact;
+import static io.jbock.common.truth.Fact.simpleFact;
+import static io.jbock.common.truth.Preconditions.checkArgument;
+import static io.jbock.common.truth.SubjectUtils.iterableToList;
+
+/**
+ * The elements of the stream of a {@link StreamSubject}, {@link IntStreamSubject} or {@link
+ * LongStreamSubject}, which are pulled from the stream only as far as the assertions need them.
+ * Checks like {@link #contains} and {@link #isNotEmpty} stop at the first matching element, so they
+ * also work for infinite streams.
+ *
+ * <p>The pulled elements are kept, so that later assertions on the same subject and the failure
+ * message can see them, but only up to a limit. If an assertion has to look at more elements than
+ * that, like a passing {@link #doesNotContain} on a huge stream, the other elements are counted and
+ * dropped. Later assertions which need them fail with an {@link IllegalStateException}. Assertions
+ * which need all the elements, like {@code containsExactly}, keep them all, regardless of the
+ * limit.
+ *
+ * <p>The default limit can be changed with the system property {@value #MAX_KEPT_PROPERTY}.
+ *
+ * <p>As long as no element was dropped, failures are reported by the corresponding {@link
+ * IterableSubject} check on the kept elements, so they look the same as for a list.
+ */
+final class StreamElements {
+    static final String MAX_KEPT_PROPERTY = "io.jbock.common.truth.stream.maxKeptElements";
+
+    private static final int DEFAULT_MAX_KEPT = Integer.getInteger(MAX_KEPT_PROPERTY, 100_000);
+
+    private final Subject subject;
+    private final Iterator<?> iterator;
+    private final int maxKept;
+    private final List<Object> kept = new ArrayList<>();
+    // The number of elements which were pulled after the limit was reached, and not kept.
+    private long dropped;
+
+    StreamElements(Subject subject, Iterator<?> iterator) {
+        this(subject, iterator, DEFAULT_MAX_KEPT);
+    }
+
+    StreamElements(Subject subject, Iterator<?> iterator, int maxKept) {
+        this.subject = subject;
+        this.iterator = iterator;
+        this.maxKept = maxKept;
+    }
+
+    void isEmpty() {
+        if (kept.isEmpty() && dropped == 0 && !iterator.hasNext()) {
+            return;
+        }
+        if (keepForFailure()) {
+            checkKept().isEmpty();
+        } else {
+            subject.failWithActual(simpleFact("expected to be empty"));
+        }
+    }
+
+    void isNotEmpty() {
+        if (!kept.isEmpty() || dropped > 0 || iterator.hasNext()) {
+            return;
+        }
+        checkKept().isNotEmpty();
+    }
+
+    void hasSize(int expectedSize) {
+        checkArgument(expectedSize >= 0, "expectedSize(%s) must be >= 0", expectedSize);
+        while (iterator.hasNext()) {
+            keep(iterator.next());
+        }
+        long actualSize = kept.size() + dropped;
+        if (actualSize == expectedSize) {
+            return;
+        }
+        if (dropped == 0) {
+            checkKept().hasSize(expectedSize);
+        } else {
+            subject.check("size()").that(actualSize).isEqualTo((long) expectedSize);
+        }
+    }
+
+    void contains(Object element) {
+        if (anyMatch(actual -> Objects.equals(element, actual))) {
+            return;
+        }
+        // All elements have been pulled.
+        if (dropped == 0) {
+            checkKept().contains(element);
+        } else {
+            subject.failWithActual(fact("expected to contain", element));
+        }
+    }
+
+    void doesNotContain(Object element) {
+        if (!anyMatch(actual -> Objects.equals(element, actual))) {
+            return;
+        }
+        if (keepForFailure()) {
+            checkKept().doesNotContain(element);
+        } else {
+            subject.failWithActual(fact("expected not to contain", element));
+        }
+    }
+
+    void containsAnyIn(Iterable<?> expected) {
+        List<?> expectedList = iterableToList(expected);
+        if (anyMatch(actual -> containsEqual(expectedList, actual))) {
+            return;
+        }
+        // All elements have been pulled.
+        if (dropped == 0) {
+            checkKept().containsAnyIn(expectedList);
+        } else {
+            subject.failWithActual(fact("expected to contain any of", expectedList));
+        }
+    }
+
+    void containsNoneIn(Iterable<?> excluded) {
+        List<?> excludedList = iterableToList(excluded);
+        Object[] present = new Object[1];
+        boolean anyPresent =
+                anyMatch(
+                        actual -> {
+                            present[0] = actual;
+                            return containsEqual(excludedList, actual);
+                        });
+        if (!anyPresent) {
+            return;
+        }
+        if (keepForFailure()) {
+            checkKept().containsNoneIn(excludedList);
+        } else {
+            subject.failWithActual(
+                    fact("expected not to contain any of", excludedList),
+                    fact("but contained", present[0]));
+        }
+    }
+
+    /**
+     * Returns a subject for all the elements, for the checks which have to look at each of them.
+     * This pulls the rest of the stream, and keeps all of its elements.
+     */
+    IterableSubject all() {
+        checkNotDropped();
+        iterator.forEachRemaining(kept::add);
+        return checkKept();
+    }
+
+    /**
+     * Renders the kept elements like a list, after pulling elements up to the limit. If the stream
+     * has more elements, this is marked at the end of the list.
+     */
+    String render() {
+        boolean complete = keepForFailure();
+        String rendered = ValueRenderer.DEFAULT.render(kept);
+        if (complete) {
+            return rendered;
+        }
+        String more =
+                iterator.hasNext()
+                        ? "…"
+                        : String.format(Locale.ROOT, "… %,d more …", dropped);
+        if (kept.isEmpty()) {
+            return "[" + more + "]";
+        }
+        return rendered.substring(0, rendered.length() - 1) + ", " + more + "]";
+    }
+
+    /** Returns a subject for the kept elements, which describes them as the stream itself. */
+    @SuppressWarnings("deprecation") // the kept elements are the actual value, so there's no name
+    private IterableSubject checkKept() {
+        return subject.check().that(kept);
+    }
+
+    /** Returns whether any element matches, pulling elements only until one does. */
+    private boolean anyMatch(Predicate<Object> predicate) {
+        for (Object element : kept) {
+            if (predicate.test(element)) {
+                return true;
+            }
+        }
+        checkNotDropped();
+        while (iterator.hasNext()) {
+            Object element = iterator.next();
+            keep(element);
+            if (predicate.test(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pulls elements for a failure message, up to the limit. Returns whether all the elements of
+     * the stream are kept now.
+     */
+    private boolean keepForFailure() {
+        while (dropped == 0 && kept.size() < maxKept && iterator.hasNext()) {
+            kept.add(iterator.next());
+        }
+        return dropped == 0 && !iterator.hasNext();
+    }
+
+    private void keep(Object element) {
+        if (dropped == 0 && kept.size() < maxKept) {
+            kept.add(element);
+        } else {
+            dropped++;
+        }
+    }
+
+    private void checkNotDropped() {
+        if (dropped > 0) {
+            throw new IllegalStateException(
+                    "A previous assertion looked at more than "
+                            + maxKept
+                            + " elements of this stream, and only the first ones were kept. To"
+                            + " make several assertions on a large stream, collect it into a list"
+                            + " first.");
+        }
+    }
+
+    private static boolean containsEqual(List<?> list, Object element) {
+        for (Object item : list) {
+            if (Objects.equals(item, element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
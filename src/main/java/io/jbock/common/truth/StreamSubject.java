@@ -15,22 +15,23 @@
  */
 package io.jbock.common.truth;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.List;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toCollection;
+import static io.jbock.common.truth.SubjectUtils.accumulate;
 
 /**
  * Propositions for {@link Stream} subjects.
  *
- * <p><b>Note:</b> the wrapped stream will be drained immediately into a private collection to
- * provide more readable failure messages. You should not use this class if you intend to leave the
- * stream un-consumed or if the stream is <i>very</i> large or infinite.
+ * <p><b>Note:</b> the elements of the wrapped stream are pulled only as far as each assertion
+ * needs them. For example, {@link #contains} stops at the first matching element, so it may be used
+ * on an infinite stream. Assertions like {@link #containsExactly} need all the elements, so you
+ * should not use them if the stream is <i>very</i> large or infinite. The pulled elements are kept
+ * for later assertions on the same subject and for failure messages, up to a limit, which can be
+ * changed with the system property {@code io.jbock.common.truth.stream.maxKeptElements}.
  *
- * <p>If you intend to make multiple assertions on the same stream of data you should instead first
+ * <p>If you intend to make multiple assertions on a large stream of data you should instead first
  * collect the contents of the stream into a collection, and then assert directly on that.
  *
  * <p>For very large or infinite streams you may want to first {@linkplain Stream#limit limit} the
@@ -40,16 +41,16 @@ import static java.util.stream.Collectors.toCollection;
  */
 public final class StreamSubject extends Subject {
 
-    private final List<?> actualList;
+    private final StreamElements elements;
 
     private StreamSubject(FailureMetadata failureMetadata, Stream<?> stream) {
         super(failureMetadata, stream);
-        this.actualList = (stream == null) ? null : stream.collect(toCollection(ArrayList::new));
+        this.elements = (stream == null) ? null : new StreamElements(this, stream.iterator());
     }
 
     @Override
     protected String actualCustomStringRepresentation() {
-        return String.valueOf(actualList);
+        return (elements == null) ? ValueRenderer.DEFAULT.render(null) : elements.render();
     }
 
     public static Subject.Factory<StreamSubject, Stream<?>> streams() {
@@ -58,12 +59,12 @@ public final class StreamSubject extends Subject {
 
     /** Fails if the subject is not empty. */
     public void isEmpty() {
-        check().that(actualList).isEmpty();
+        elements.isEmpty();
     }
 
     /** Fails if the subject is empty. */
     public void isNotEmpty() {
-        check().that(actualList).isNotEmpty();
+        elements.isNotEmpty();
     }
 
     /**
@@ -73,33 +74,33 @@ public final class StreamSubject extends Subject {
      * elements, use {@code assertThat(stream.count()).isEqualTo(...)}.
      */
     public void hasSize(int expectedSize) {
-        check().that(actualList).hasSize(expectedSize);
+        elements.hasSize(expectedSize);
     }
 
     /** Fails if the subject does not contain the given element. */
     public void contains(Object element) {
-        check().that(actualList).contains(element);
+        elements.contains(element);
     }
 
     /** Fails if the subject contains the given element. */
     public void doesNotContain(Object element) {
-        check().that(actualList).doesNotContain(element);
+        elements.doesNotContain(element);
     }
 
     /** Fails if the subject contains duplicate elements. */
     public void containsNoDuplicates() {
-        check().that(actualList).containsNoDuplicates();
+        elements.all().containsNoDuplicates();
     }
 
     /** Fails if the subject does not contain at least one of the given elements. */
     public void containsAnyOf(
             Object first, Object second, Object... rest) {
-        check().that(actualList).containsAnyOf(first, second, rest);
+        elements.containsAnyIn(accumulate(first, second, rest));
     }
 
     /** Fails if the subject does not contain at least one of the given elements. */
     public void containsAnyIn(Iterable<?> expected) {
-        check().that(actualList).containsAnyIn(expected);
+        elements.containsAnyIn(expected);
     }
 
     /**
@@ -113,7 +114,7 @@ public final class StreamSubject extends Subject {
      */
     public Ordered containsAtLeast(
             Object first, Object second, Object... rest) {
-        return check().that(actualList).containsAtLeast(first, second, rest);
+        return elements.all().containsAtLeast(first, second, rest);
     }
 
     /**
@@ -126,7 +127,7 @@ public final class StreamSubject extends Subject {
      * within the actual elements, but they are not required to be consecutive.
      */
     public Ordered containsAtLeastElementsIn(Collection<?> expected) {
-        return check().that(actualList).containsAtLeastElementsIn(expected);
+        return elements.all().containsAtLeastElementsIn(expected);
     }
 
     // TODO(cpovirk): Add array overload of contains*ElementsIn methods? Also for int and long stream.
@@ -141,7 +142,7 @@ public final class StreamSubject extends Subject {
      * on the object returned by this method.
      */
     public Ordered containsExactly(Object... varargs) {
-        return check().that(actualList).containsExactly(varargs);
+        return elements.all().containsExactly(varargs);
     }
 
     /**
@@ -154,7 +155,7 @@ public final class StreamSubject extends Subject {
      * on the object returned by this method.
      */
     public Ordered containsExactlyElementsIn(Iterable<?> expected) {
-        return check().that(actualList).containsExactlyElementsIn(expected);
+        return elements.all().containsExactlyElementsIn(expected);
     }
 
     /**
@@ -163,7 +164,7 @@ public final class StreamSubject extends Subject {
      */
     public void containsNoneOf(
             Object first, Object second, Object... rest) {
-        check().that(actualList).containsNoneOf(first, second, rest);
+        elements.containsNoneIn(accumulate(first, second, rest));
     }
 
     /**
@@ -171,7 +172,7 @@ public final class StreamSubject extends Subject {
      * test, which fails if any of the actual elements equal any of the excluded.)
      */
     public void containsNoneIn(Collection<?> excluded) {
-        check().that(actualList).containsNoneIn(excluded);
+        elements.containsNoneIn(excluded);
     }
 
     /**
@@ -183,7 +184,7 @@ public final class StreamSubject extends Subject {
      * @throws NullPointerException if any element is null
      */
     public void isInStrictOrder() {
-        check().that(actualList).isInStrictOrder();
+        elements.all().isInStrictOrder();
     }
 
     /**
@@ -194,7 +195,7 @@ public final class StreamSubject extends Subject {
      * @throws ClassCastException if any pair of elements is not mutually Comparable
      */
     public void isInStrictOrder(Comparator<?> comparator) {
-        check().that(actualList).isInStrictOrder(comparator);
+        elements.all().isInStrictOrder(comparator);
     }
 
     /**
@@ -205,7 +206,7 @@ public final class StreamSubject extends Subject {
      * @throws NullPointerException if any element is null
      */
     public void isInOrder() {
-        check().that(actualList).isInOrder();
+        elements.all().isInOrder();
     }
 
     /**
@@ -215,7 +216,7 @@ public final class StreamSubject extends Subject {
      * @throws ClassCastException if any pair of elements is not mutually Comparable
      */
     public void isInOrder(Comparator<?> comparator) {
-        check().that(actualList).isInOrder(comparator);
+        elements.all().isInOrder(comparator);
     }
 
     // TODO(user): Do we want to override + deprecate isEqualTo/isNotEqualTo?
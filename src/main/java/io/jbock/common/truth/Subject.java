@@ -25,8 +25,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static io.jbock.common.truth.Fact.fact;
@@ -40,6 +38,7 @@ import static io.jbock.common.truth.SubjectUtils.append;
 import static io.jbock.common.truth.SubjectUtils.concat;
 import static io.jbock.common.truth.SubjectUtils.sandwich;
 import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
 
 /**
  * An object that lets you perform checks on the value under test. For example, {@code Subject}
@@ -84,7 +83,11 @@ public class Subject {
                 }
             };
 
-    private final FailureMetadata metadata;
+    // The metadata passed to the constructor. We add this subject to it only when we need it, which
+    // is on failure or for a call to check(), so that passing assertions don't pay for it.
+    private final FailureMetadata parentMetadata;
+    // The metadata of the assertion chain which ends with this subject, once we need it.
+    private FailureMetadata metadata;
     private final Object actual;
     private String customName = null;
     private final String typeDescriptionOverride;
@@ -110,7 +113,7 @@ public class Subject {
      */
     Subject(
             FailureMetadata metadata, Object actual, String typeDescriptionOverride) {
-        this.metadata = metadata.updateForSubject(this);
+        this.parentMetadata = requireNonNull(metadata);
         this.actual = actual;
         this.typeDescriptionOverride = typeDescriptionOverride;
     }
@@ -179,14 +182,13 @@ public class Subject {
         ComparisonResult difference = compareForEquality(unexpected);
         if (difference.valuesAreEqual()) {
             String unexpectedAsString = formatActualOrExpected(unexpected);
-            if (actualCustomStringRepresentation().equals(unexpectedAsString)) {
+            String actualAsString = actualCustomStringRepresentation();
+            if (actualAsString.equals(unexpectedAsString)) {
                 failWithoutActual(fact("expected not to be", unexpectedAsString));
             } else {
                 failWithoutActual(
                         fact("expected not to be", unexpectedAsString),
-                        fact(
-                                "but was; string representation of actual value",
-                                actualCustomStringRepresentation()));
+                        fact("but was; string representation of actual value", actualAsString));
             }
         }
     }
@@ -358,6 +360,14 @@ public class Subject {
         isNotIn(accumulate(first, second, rest));
     }
 
+    /** Returns the metadata of the assertion chain which ends with this subject. */
+    private FailureMetadata metadata() {
+        if (metadata == null) {
+            metadata = parentMetadata.updateForSubject(this);
+        }
+        return metadata;
+    }
+
     /** Returns the actual value under test. */
     final Object actual() {
         return actual;
@@ -395,10 +405,7 @@ public class Subject {
         if (o instanceof byte[]) {
             return base16((byte[]) o);
         } else if (o != null && o.getClass().isArray()) {
-            String wrapped = StreamSupport.stream(stringableIterable(new Object[]{o}).spliterator(), false)
-                    .map(Objects::toString)
-                    .collect(Collectors.joining(", ", "[", "]"));
-            return wrapped.substring(1, wrapped.length() - 1);
+            return ValueRenderer.DEFAULT.renderArraysAsLists(o);
         } else if (o instanceof Double) {
             return doubleToString((Double) o);
         } else if (o instanceof Float) {
@@ -419,43 +426,6 @@ public class Subject {
 
     private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
 
-    private static Iterable<?> stringableIterable(Object[] array) {
-        return Stream.of(array).map(STRINGIFY).collect(Collectors.toList());
-    }
-
-    private static final Function<Object, Object> STRINGIFY =
-            new Function<Object, Object>() {
-                @Override
-                public Object apply(Object input) {
-                    if (input != null && input.getClass().isArray()) {
-                        Iterable<?> iterable;
-                        if (input.getClass() == boolean[].class) {
-                            iterable = Util.booleansAsList((boolean[]) input);
-                        } else if (input.getClass() == int[].class) {
-                            iterable = Util.intsAsList((int[]) input);
-                        } else if (input.getClass() == long[].class) {
-                            iterable = Util.longsAsList((long[]) input);
-                        } else if (input.getClass() == short[].class) {
-                            iterable = Util.shortsAsList((short[]) input);
-                        } else if (input.getClass() == byte[].class) {
-                            iterable = Util.bytesAsList((byte[]) input);
-                        } else if (input.getClass() == double[].class) {
-                            iterable = doubleArrayAsString((double[]) input);
-                        } else if (input.getClass() == float[].class) {
-                            iterable = floatArrayAsString((float[]) input);
-                        } else if (input.getClass() == char[].class) {
-                            iterable = Util.charsAsList((char[]) input);
-                        } else {
-                            iterable = Arrays.asList((Object[]) input);
-                        }
-                        return StreamSupport.stream(iterable.spliterator(), false)
-                                .map(STRINGIFY)
-                                .collect(Collectors.toList());
-                    }
-                    return input;
-                }
-            };
-
     /**
      * The result of comparing two objects for equality. This includes both the "equal"/"not-equal"
      * bit and, in the case of "not equal," optional facts describing the difference.
@@ -605,21 +575,6 @@ public class Subject {
         }
     }
 
-    private static List<String> doubleArrayAsString(double[] items) {
-        List<String> itemAsStrings = new ArrayList<>(items.length);
-        for (double item : items) {
-            itemAsStrings.add(doubleToString(item));
-        }
-        return itemAsStrings;
-    }
-
-    private static List<String> floatArrayAsString(float[] items) {
-        List<String> itemAsStrings = new ArrayList<>(items.length);
-        for (float item : items) {
-            itemAsStrings.add(floatToString(item));
-        }
-        return itemAsStrings;
-    }
 
     /**
      * Returns a builder for creating a derived subject but without providing information about how
@@ -631,7 +586,7 @@ public class Subject {
      */
     @Deprecated
     final StandardSubjectBuilder check() {
-        return new StandardSubjectBuilder(metadata.updateForCheckCall());
+        return new StandardSubjectBuilder(metadata().updateForCheckCall());
     }
 
     /**
@@ -682,7 +637,7 @@ public class Subject {
                     }
                 };
         return new StandardSubjectBuilder(
-                metadata.updateForCheckCall(valuesAreSimilar, descriptionUpdate));
+                metadata().updateForCheckCall(valuesAreSimilar, descriptionUpdate));
     }
 
     /**
@@ -856,7 +811,7 @@ public class Subject {
             }
         } else {
             if (equalityCheck == EqualityCheck.EQUAL && actual != null && expected != null) {
-                metadata.failEqualityCheck(
+                metadata().failEqualityCheck(
                         nameAsFacts(), difference.factsOrEmpty(), expectedString, actualString);
             } else {
                 failEqualityCheckNoComparisonFailure(
@@ -1071,6 +1026,14 @@ public class Subject {
         doFail(Util.iterableToList(facts));
     }
 
+    /**
+     * Like {@link #failWithoutActual(Iterable)}, but adds the given errors to the failure as
+     * suppressed exceptions, so that their stack traces are reported with it.
+     */
+    final void failWithoutActual(Iterable<Fact> facts, List<? extends Throwable> suppressed) {
+        metadata().fail(prependNameIfAny(Util.iterableToList(facts)), suppressed);
+    }
+
     /**
      * Assembles a failure message without a given subject and passes it to the FailureStrategy
      *
@@ -1177,7 +1140,7 @@ public class Subject {
     }
 
     private void doFail(List<Fact> facts) {
-        metadata.fail(prependNameIfAny(facts));
+        metadata().fail(prependNameIfAny(facts));
     }
 
     private List<Fact> prependNameIfAny(List<Fact> facts) {
@@ -56,16 +56,20 @@ final class SubjectUtils {
     }
 
     static String countDuplicates(Iterable<?> items) {
+        return countDuplicates(new RenderingContext(), items);
+    }
+
+    private static String countDuplicates(RenderingContext context, Iterable<?> items) {
         /*
          * TODO(cpovirk): Remove brackets after migrating all callers to the new message format. But
          * will that look OK when we put the result next to a homogeneous type name? If not, maybe move
          * the homogeneous type name to a separate Fact?
          */
-        return toStringWithBrackets(countDuplicatesToMultiset(items));
+        return toStringWithBrackets(context, countDuplicatesToMultiset(items));
     }
 
-    static String entryString(Object element, int count) {
-        String item = String.valueOf(element);
+    static String entryString(RenderingContext context, Object element, int count) {
+        String item = context.stringValueOf(element);
         return (count > 1) ? item + " [" + count + " copies]" : item;
     }
 
@@ -88,13 +92,14 @@ final class SubjectUtils {
      * (java.lang.Integer)"} and {@code countDuplicatesAndAddTypeInfo([1, 2L]) == "[1
      * (java.lang.Integer), 2 (java.lang.Long)]"}.
      */
-    static String countDuplicatesAndAddTypeInfo(Iterable<?> itemsIterable) {
+    static String countDuplicatesAndAddTypeInfo(
+            RenderingContext context, Iterable<?> itemsIterable) {
         Collection<?> items = iterableToCollection(itemsIterable);
-        Optional<String> homogeneousTypeName = getHomogeneousTypeName(items);
+        Optional<String> homogeneousTypeName = getHomogeneousTypeName(context, items);
 
         return homogeneousTypeName.isPresent()
-                ? String.format("%s (%s)", countDuplicates(items), homogeneousTypeName.get())
-                : countDuplicates(addTypeInfoToEveryItem(items));
+                ? countDuplicates(context, items) + " (" + homogeneousTypeName.get() + ")"
+                : countDuplicates(context, addTypeInfoToEveryItem(context, items));
     }
 
     /**
@@ -102,33 +107,35 @@ final class SubjectUtils {
      * adds type info if requested and (b) returns a richer object containing the data.
      */
     static DuplicateGroupedAndTyped countDuplicatesAndMaybeAddTypeInfoReturnObject(
-            Iterable<?> itemsIterable, boolean addTypeInfo) {
+            RenderingContext context, Iterable<?> itemsIterable, boolean addTypeInfo) {
         if (addTypeInfo) {
             Collection<?> items = iterableToCollection(itemsIterable);
-            Optional<String> homogeneousTypeName = getHomogeneousTypeName(items);
+            Optional<String> homogeneousTypeName = getHomogeneousTypeName(context, items);
 
             Map<?, Integer> valuesWithCountsAndMaybeTypes =
                     homogeneousTypeName.isPresent()
                             ? countDuplicatesToMultiset(items)
-                            : countDuplicatesToMultiset(addTypeInfoToEveryItem(items));
-            return new DuplicateGroupedAndTyped(valuesWithCountsAndMaybeTypes, homogeneousTypeName);
+                            : countDuplicatesToMultiset(addTypeInfoToEveryItem(context, items));
+            return new DuplicateGroupedAndTyped(
+                    context, valuesWithCountsAndMaybeTypes, homogeneousTypeName);
         } else {
             return new DuplicateGroupedAndTyped(
+                    context,
                     countDuplicatesToMultiset(itemsIterable),
                     /* homogeneousTypeToDisplay= */ Optional.empty());
         }
     }
 
-    static String toStringWithBrackets(Map<?, Integer> multiset) {
+    static String toStringWithBrackets(RenderingContext context, Map<?, Integer> multiset) {
         List<String> parts = new ArrayList<>();
         for (Map.Entry<?, Integer> entry : multiset.entrySet()) {
-            parts.add(entryString(entry.getKey(), entry.getValue()));
+            parts.add(entryString(context, entry.getKey(), entry.getValue()));
         }
         return parts.toString();
     }
 
-    static String toStringWithoutBrackets(Map<?, Integer> multiset) {
-        String string = toStringWithBrackets(multiset);
+    static String toStringWithoutBrackets(RenderingContext context, Map<?, Integer> multiset) {
+        String string = toStringWithBrackets(context, multiset);
         return string.substring(1, string.length() - 1);
     }
 
@@ -143,11 +150,15 @@ final class SubjectUtils {
      * elements and even to output different elements on different lines.
      */
     static final class DuplicateGroupedAndTyped {
+        private final RenderingContext context;
         final Map<?, Integer> valuesAndMaybeTypes;
         final Optional<String> homogeneousTypeToDisplay;
 
         DuplicateGroupedAndTyped(
-                Map<?, Integer> valuesAndMaybeTypes, Optional<String> homogeneousTypeToDisplay) {
+                RenderingContext context,
+                Map<?, Integer> valuesAndMaybeTypes,
+                Optional<String> homogeneousTypeToDisplay) {
+            this.context = context;
             this.valuesAndMaybeTypes = valuesAndMaybeTypes;
             this.homogeneousTypeToDisplay = homogeneousTypeToDisplay;
         }
@@ -169,8 +180,11 @@ final class SubjectUtils {
         @Override
         public String toString() {
             return homogeneousTypeToDisplay.isPresent()
-                    ? toStringWithoutBrackets(valuesAndMaybeTypes) + " (" + homogeneousTypeToDisplay.get() + ")"
-                    : toStringWithoutBrackets(valuesAndMaybeTypes);
+                    ? toStringWithoutBrackets(context, valuesAndMaybeTypes)
+                            + " ("
+                            + homogeneousTypeToDisplay.get()
+                            + ")"
+                    : toStringWithoutBrackets(context, valuesAndMaybeTypes);
         }
     }
 
@@ -181,28 +195,110 @@ final class SubjectUtils {
      *
      * <p>Example: {@code retainMatchingToString([1L, 2L, 2L], [2, 3]) == [2L, 2L]}
      */
-    static List<Object> retainMatchingToString(Iterable<?> items, Iterable<?> itemsToCheck) {
-        Map<String, Set<Object>> stringValueToItemsToCheck = new LinkedHashMap<>();
-        for (Object itemToCheck : itemsToCheck) {
-            stringValueToItemsToCheck.compute(String.valueOf(itemToCheck), (k, v) -> {
+    static List<Object> retainMatchingToString(
+            RenderingContext context, Iterable<?> items, Iterable<?> itemsToCheck) {
+        Map<String, Set<Object>> stringValueToItemsToCheck = indexByToString(context, itemsToCheck);
+        List<Object> result = new ArrayList<>();
+        for (Object item : items) {
+            if (hasMatchingToString(context, item, stringValueToItemsToCheck)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #retainMatchingToString}, but gives up when {@code items} is too large, so that a
+     * failure about a huge iterable doesn't spend seconds and lots of memory on near misses. If
+     * {@code items} is a collection with more elements than the budget allows, we don't look at it at
+     * all. Otherwise, we stop at the element limit or after enough matches. Only the elements we get
+     * to are converted to strings.
+     */
+    static NearMisses findNearMisses(
+            RenderingContext context,
+            Iterable<?> items,
+            Iterable<?> itemsToCheck,
+            NearMissBudget budget) {
+        if (!itemsToCheck.iterator().hasNext()) {
+            return new NearMisses(List.of(), false);
+        }
+        if (items instanceof Collection && ((Collection<?>) items).size() > budget.maxElements) {
+            return new NearMisses(List.of(), true);
+        }
+        Map<String, Set<Object>> stringValueToItemsToCheck = indexByToString(context, itemsToCheck);
+        List<Object> result = new ArrayList<>();
+        int seen = 0;
+        for (Object item : items) {
+            if (seen == budget.maxElements || result.size() == budget.maxMatches) {
+                return new NearMisses(result, true);
+            }
+            seen++;
+            if (hasMatchingToString(context, item, stringValueToItemsToCheck)) {
+                result.add(item);
+            }
+        }
+        return new NearMisses(result, false);
+    }
+
+    private static Map<String, Set<Object>> indexByToString(
+            RenderingContext context, Iterable<?> items) {
+        Map<String, Set<Object>> stringValueToItems = new LinkedHashMap<>();
+        for (Object item : items) {
+            stringValueToItems.compute(context.stringValueOf(item), (k, v) -> {
                 if (v == null) {
                     v = new LinkedHashSet<>();
                 }
-                v.add(itemToCheck);
+                v.add(item);
                 return v;
             });
         }
+        return stringValueToItems;
+    }
 
-        List<Object> result = new ArrayList<>();
-        for (Object item : items) {
-            for (Object itemToCheck : stringValueToItemsToCheck.getOrDefault(String.valueOf(item), Set.of())) {
-                if (!Objects.equals(itemToCheck, item)) {
-                    result.add(item);
-                    break;
-                }
+    private static boolean hasMatchingToString(
+            RenderingContext context, Object item, Map<String, Set<Object>> stringValueToItems) {
+        for (Object other : stringValueToItems.getOrDefault(context.stringValueOf(item), Set.of())) {
+            if (!Objects.equals(other, item)) {
+                return true;
             }
         }
-        return result;
+        return false;
+    }
+
+    /**
+     * The limits of {@link #findNearMisses}. The defaults can be changed with the system properties
+     * {@value #MAX_ELEMENTS_PROPERTY} and {@value #MAX_MATCHES_PROPERTY}.
+     */
+    static final class NearMissBudget {
+        static final String MAX_ELEMENTS_PROPERTY = "io.jbock.common.truth.nearMiss.maxElements";
+        static final String MAX_MATCHES_PROPERTY = "io.jbock.common.truth.nearMiss.maxMatches";
+
+        static final NearMissBudget DEFAULT =
+                new NearMissBudget(
+                        Integer.getInteger(MAX_ELEMENTS_PROPERTY, 100_000),
+                        Integer.getInteger(MAX_MATCHES_PROPERTY, 1_000));
+
+        // The largest number of elements that we convert to strings.
+        final int maxElements;
+        // The number of near misses after which we stop looking for more.
+        final int maxMatches;
+
+        NearMissBudget(int maxElements, int maxMatches) {
+            this.maxElements = maxElements;
+            this.maxMatches = maxMatches;
+        }
+    }
+
+    /** The result of {@link #findNearMisses}. */
+    static final class NearMisses {
+        final List<Object> elements;
+        // Whether we stopped before looking at every element, so there may be more near misses.
+        final boolean incomplete;
+
+        NearMisses(List<Object> elements, boolean incomplete) {
+            this.elements = elements;
+            this.incomplete = incomplete;
+        }
     }
 
     /**
@@ -211,11 +307,12 @@ final class SubjectUtils {
      *
      * <p>Example: {@code hasMatchingToStringPair([1L, 2L], [1]) == true}
      */
-    static boolean hasMatchingToStringPair(Iterable<?> items1, Iterable<?> items2) {
+    static boolean hasMatchingToStringPair(
+            RenderingContext context, Iterable<?> items1, Iterable<?> items2) {
         if (!items1.iterator().hasNext() || !items2.iterator().hasNext()) {
             return false; // Bail early to avoid calling hashCode() on the elements unnecessarily.
         }
-        return !retainMatchingToString(items1, items2).isEmpty();
+        return !retainMatchingToString(context, items1, items2).isEmpty();
     }
 
     static String objectToTypeName(Object item) {
@@ -229,7 +326,7 @@ final class SubjectUtils {
             String valueTypeName =
                     entry.getValue() == entry ? "Map.Entry" : objectToTypeName(entry.getValue());
 
-            return String.format("Map.Entry<%s, %s>", objectToTypeName(entry.getKey()), valueTypeName);
+            return "Map.Entry<" + objectToTypeName(entry.getKey()) + ", " + valueTypeName + ">";
         } else {
             return item.getClass().getName();
         }
@@ -239,7 +336,8 @@ final class SubjectUtils {
      * Returns the name of the single type of all given items or {@link Optional#empty()} if no such
      * type exists.
      */
-    private static Optional<String> getHomogeneousTypeName(Iterable<?> items) {
+    private static Optional<String> getHomogeneousTypeName(
+            RenderingContext context, Iterable<?> items) {
         Optional<String> homogeneousTypeName = Optional.empty();
         for (Object item : items) {
             if (item == null) {
@@ -251,8 +349,8 @@ final class SubjectUtils {
                 return Optional.empty();
             } else if (!homogeneousTypeName.isPresent()) {
                 // This is the first item
-                homogeneousTypeName = Optional.of(objectToTypeName(item));
-            } else if (!objectToTypeName(item).equals(homogeneousTypeName.get())) {
+                homogeneousTypeName = Optional.of(context.typeName(item));
+            } else if (!context.typeName(item).equals(homogeneousTypeName.get())) {
                 // items is a heterogeneous collection
                 return Optional.empty();
             }
@@ -260,10 +358,11 @@ final class SubjectUtils {
         return homogeneousTypeName;
     }
 
-    private static List<String> addTypeInfoToEveryItem(Iterable<?> items) {
+    private static List<String> addTypeInfoToEveryItem(
+            RenderingContext context, Iterable<?> items) {
         List<String> itemsWithTypeInfo = new ArrayList<>();
         for (Object item : items) {
-            itemsWithTypeInfo.add(String.format("%s (%s)", item, objectToTypeName(item)));
+            itemsWithTypeInfo.add(context.stringValueOf(item) + " (" + context.typeName(item) + ")");
         }
         return itemsWithTypeInfo;
     }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import java.lang.reflect.Array;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Renders values for failure messages, like {@link String#valueOf(Object)}, but within a budget. A
+ * failing assertion about a collection with millions of elements would otherwise put all of them
+ * into a single fact, which can take more memory than the test has.
+ *
+ * <p>The budget limits the number of elements shown at each level of a collection, map or array,
+ * and the total number of characters. Elements beyond the first limit are replaced by a marker
+ * like {@code … 4,999,980 more …} between the first and the last few elements. Values beyond the
+ * second limit are shortened to their beginning and end.
+ *
+ * <p>Collections and maps are only rendered element by element if they use the {@code toString()}
+ * of {@link AbstractCollection} or {@link AbstractMap}, so that we produce the same string as they
+ * would if it fits the budget. We never call their {@code toString()}. Other values are rendered
+ * with {@code toString()} and then shortened, if necessary.
+ *
+ * <p>The default limits can be changed with the system properties {@value #MAX_CHARS_PROPERTY} and
+ * {@value #MAX_ELEMENTS_PROPERTY}.
+ */
+final class ValueRenderer {
+    static final String MAX_CHARS_PROPERTY = "io.jbock.common.truth.render.maxChars";
+    static final String MAX_ELEMENTS_PROPERTY = "io.jbock.common.truth.render.maxElements";
+
+    static final ValueRenderer DEFAULT =
+            new ValueRenderer(
+                    Integer.getInteger(MAX_CHARS_PROPERTY, 1_000_000),
+                    Integer.getInteger(MAX_ELEMENTS_PROPERTY, 10_000));
+
+    /** The class which declares the {@code toString()} method of each class. */
+    private static final ClassValue<Class<?>> TO_STRING_DECLARER =
+            new ClassValue<Class<?>>() {
+                @Override
+                protected Class<?> computeValue(Class<?> type) {
+                    try {
+                        return type.getMethod("toString").getDeclaringClass();
+                    } catch (NoSuchMethodException e) {
+                        // Every class has a public toString() method.
+                        throw new AssertionError(e);
+                    }
+                }
+            };
+
+    // The largest number of characters of a rendered value, not counting the elision markers.
+    private final int maxChars;
+    // The largest number of elements shown for each collection, map or array.
+    private final int maxElements;
+
+    ValueRenderer(int maxChars, int maxElements) {
+        this.maxChars = maxChars;
+        this.maxElements = maxElements;
+    }
+
+    /** Renders the value like {@link String#valueOf(Object)}, but within the budget. */
+    String render(Object value) {
+        StringBuilder builder = new StringBuilder();
+        appendValue(builder, value);
+        return builder.toString();
+    }
+
+    /**
+     * Renders the value like {@link #render}, except that an array, and any arrays nested directly
+     * in it, are rendered like a list of their elements.
+     */
+    String renderArraysAsLists(Object value) {
+        StringBuilder builder = new StringBuilder();
+        appendValueOrArray(builder, value);
+        return builder.toString();
+    }
+
+    /** Renders the elements of the iterable like a list, regardless of its {@code toString()}. */
+    String renderElements(Iterable<?> iterable) {
+        StringBuilder builder = new StringBuilder();
+        appendElements(builder, iterable.iterator(), iterable, false);
+        return builder.toString();
+    }
+
+    /** Returns whether the class uses the {@code toString()} method of {@link Object}. */
+    static boolean hasDefaultToString(Class<?> type) {
+        return TO_STRING_DECLARER.get(type) == Object.class;
+    }
+
+    private void appendValueOrArray(StringBuilder builder, Object value) {
+        if (value != null && value.getClass().isArray()) {
+            appendElements(builder, arrayIterator(value), value, true);
+        } else {
+            appendValue(builder, value);
+        }
+    }
+
+    private void appendValue(StringBuilder builder, Object value) {
+        if (value instanceof Collection
+                && TO_STRING_DECLARER.get(value.getClass()) == AbstractCollection.class) {
+            appendElements(builder, ((Collection<?>) value).iterator(), value, false);
+        } else if (value instanceof Map
+                && TO_STRING_DECLARER.get(value.getClass()) == AbstractMap.class) {
+            appendMap(builder, (Map<?, ?>) value);
+        } else {
+            appendShortened(builder, String.valueOf(value));
+        }
+    }
+
+    private void appendMap(StringBuilder builder, Map<?, ?> map) {
+        builder.append('{');
+        appendSequence(builder, map.entrySet().iterator(), map, false);
+        builder.append('}');
+    }
+
+    private void appendElements(
+            StringBuilder builder, Iterator<?> elements, Object container, boolean arraysAsLists) {
+        builder.append('[');
+        appendSequence(builder, elements, container, arraysAsLists);
+        builder.append(']');
+    }
+
+    /**
+     * Appends the first and the last elements, separated by commas, with a marker for the ones in
+     * between if there are too many. We don't render the elements in between, but we do have to
+     * iterate over them to find the last ones.
+     */
+    private void appendSequence(
+            StringBuilder builder, Iterator<?> elements, Object container, boolean arraysAsLists) {
+        int headSize = maxElements - maxElements / 2;
+        int count = 0;
+        while (elements.hasNext() && count < headSize && builder.length() < maxChars) {
+            appendSeparator(builder, count++);
+            appendElement(builder, elements.next(), container, arraysAsLists);
+        }
+        if (!elements.hasNext()) {
+            return;
+        }
+        int tailSize = builder.length() < maxChars ? maxElements / 2 : 0;
+        // The last tailSize elements, in a ring buffer.
+        List<Object> tail = new ArrayList<>();
+        long remaining = 0;
+        while (elements.hasNext()) {
+            Object element = elements.next();
+            if (tail.size() < tailSize) {
+                tail.add(element);
+            } else if (tailSize > 0) {
+                tail.set((int) (remaining % tailSize), element);
+            }
+            remaining++;
+        }
+        int kept = (int) min(remaining, tailSize);
+        long omitted = remaining - kept;
+        int markerStart = builder.length();
+        int markerCount = count;
+        if (omitted > 0) {
+            appendSeparator(builder, count++);
+            appendMoreMarker(builder, omitted);
+        }
+        for (long i = omitted; i < remaining; i++) {
+            if (builder.length() >= maxChars) {
+                // Rather than a marker for each of the remaining elements, leave out the whole tail.
+                builder.setLength(markerStart);
+                appendSeparator(builder, markerCount);
+                appendMoreMarker(builder, remaining);
+                return;
+            }
+            appendSeparator(builder, count++);
+            appendElement(builder, tail.get((int) (i % tailSize)), container, arraysAsLists);
+        }
+    }
+
+    private static void appendMoreMarker(StringBuilder builder, long omitted) {
+        builder.append("… ").append(String.format(Locale.ROOT, "%,d", omitted)).append(" more …");
+    }
+
+    private static void appendSeparator(StringBuilder builder, int count) {
+        if (count > 0) {
+            builder.append(", ");
+        }
+    }
+
+    private void appendElement(
+            StringBuilder builder, Object element, Object container, boolean arraysAsLists) {
+        if (container instanceof Map) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+            appendElementValue(builder, entry.getKey(), container);
+            builder.append('=');
+            appendElementValue(builder, entry.getValue(), container);
+        } else if (arraysAsLists) {
+            appendValueOrArray(builder, element);
+        } else {
+            appendElementValue(builder, element, container);
+        }
+    }
+
+    /** Appends an element like the {@code toString()} of a collection or map would. */
+    private void appendElementValue(StringBuilder builder, Object value, Object container) {
+        if (value == container) {
+            builder.append(container instanceof Map ? "(this Map)" : "(this Collection)");
+        } else {
+            appendValue(builder, value);
+        }
+    }
+
+    /**
+     * Appends the string, or if there isn't enough budget left for it, its beginning and end with a
+     * marker for the characters in between.
+     */
+    private void appendShortened(StringBuilder builder, String string) {
+        int available = max(maxChars - builder.length(), 0);
+        if (string.length() <= available) {
+            builder.append(string);
+            return;
+        }
+        int headEnd = (available + 1) / 2;
+        int tailStart = string.length() - available / 2;
+        // Don't split surrogate pairs.
+        if (headEnd > 0 && Character.isHighSurrogate(string.charAt(headEnd - 1))) {
+            headEnd--;
+        }
+        if (tailStart < string.length() && Character.isLowSurrogate(string.charAt(tailStart))) {
+            tailStart++;
+        }
+        builder.append(string, 0, headEnd);
+        builder.append("… ")
+                .append(String.format(Locale.ROOT, "%,d", tailStart - headEnd))
+                .append(" more characters …");
+        builder.append(string, tailStart, string.length());
+    }
+
+    private static Iterator<Object> arrayIterator(Object array) {
+        int length = Array.getLength(array);
+        return new Iterator<Object>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < length;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return Array.get(array, index++);
+            }
+        };
+    }
+}
@@ -21,7 +21,6 @@ import org.junit.jupiter.api.Test;
 import static io.jbock.common.truth.Fact.simpleFact;
 import static io.jbock.common.truth.Truth.assertAbout;
 import static io.jbock.common.truth.Truth.assertThat;
-import static io.jbock.common.truth.Truth.assert_;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /** Tests for chained subjects (produced with {@link Subject#check(String, Object...)}, etc.). */
@@ -303,6 +302,32 @@ final class ChainingTest extends BaseSubjectTestCase {
                 "prefix\nvalue of    : myObject.child\nmessage\nmyObject was: root");
     }
 
+    @Test
+    void namedAfterPassingAssertion() {
+        MyObjectSubject subject = assertAbout(myObjects()).that("root");
+        subject.isEqualTo("root");
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> subject.delegatingToNamed("child", "child").isThePresentKingOfFrance());
+        assertNoCause(
+                failure,
+                "value of    : myObject.child\nmessage\nmyObject was: root");
+    }
+
+    @Test
+    void failsTwiceWithSameDescription() {
+        MyObjectSubject subject =
+                assertAbout(myObjects()).that("root").delegatingToNamed("child", "child");
+        for (int i = 0; i < 2; i++) {
+            AssertionError failure = assertThrows(
+                    AssertionError.class,
+                    subject::isThePresentKingOfFrance);
+            assertNoCause(
+                    failure,
+                    "value of    : myObject.child\nmessage\nmyObject was: root");
+        }
+    }
+
     @Test
     void checkFail() {
         AssertionError failure = assertThrows(
@@ -327,13 +352,22 @@ final class ChainingTest extends BaseSubjectTestCase {
                 "message\nvalue of    : myObject.child\nmyObject was: root");
     }
 
+    @Test
+    void badFormatIsNotValidatedIfTheAssertionPasses() {
+        assertThat("root").check("%s %s", 1, 2, 3).that("child").isEqualTo("child");
+    }
+
     @Test
     void badFormat() {
-        try {
-            Object unused = assertThat("root").check("%s %s", 1, 2, 3);
-            assert_().fail();
-        } catch (IllegalArgumentException expected) {
-        }
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat("root").check("%s %s", 1, 2, 3).that("child").isEqualTo("other"));
+        assertFailureKeys(failure, "value of", "expected", "but was", "string was");
+        assertFailureValue(
+                failure,
+                "value of",
+                "string.%s %s [1, 2, 3] (incorrect number of args (3) for the given placeholders"
+                        + " (2))");
     }
 
     /*
@@ -16,6 +16,7 @@
 
 package io.jbock.common.truth;
 
+import io.jbock.common.truth.ComparisonFailures.DiffBudget;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -24,6 +25,7 @@ import static io.jbock.common.truth.ComparisonFailures.formatExpectedAndActual;
 import static io.jbock.common.truth.Fact.fact;
 import static io.jbock.common.truth.Fact.simpleFact;
 import static io.jbock.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /** Test for {@link ComparisonFailureWithFacts}. */
 class ComparisonFailureWithFactsTest {
@@ -161,6 +163,88 @@ class ComparisonFailureWithFactsTest {
                 joinNewline("@@ -18,3 +18,4 @@", " a", " a", " a", "+"));
     }
 
+    @Test
+    void formatDiffLongSingleLine() {
+        String json = "{\"key\":\"value\"},".repeat(50_000);
+        runFormatTest(
+                json + "{\"key\":\"expected\"}," + json,
+                json + "{\"key\":\"actual\"}," + json,
+                joinNewline(
+                        "@@ -1,1 +1,1 @@",
+                        "~…y\":\"value\"},{\"key\":\"[-expected-]{+actual+}\"},"
+                                + "{\"key\":\"value\"},{…"));
+    }
+
+    @Test
+    void formatDiffWithinBudget() {
+        String expected = "a\n".repeat(100) + "b";
+        String actual = "a\n".repeat(100) + "c";
+        List<Fact> facts =
+                formatExpectedAndActual(
+                        expected, actual, new DiffBudget(101, 2, SECONDS.toNanos(10)));
+        assertThat(facts).hasSize(1);
+        assertThat(facts.get(0).value)
+                .isEqualTo(joinNewline("@@ -98,4 +98,4 @@", " a", " a", " a", "-b", "+c"));
+    }
+
+    @Test
+    void formatDiffTooManyLines() {
+        runBudgetExceededTest(
+                "a\n".repeat(100) + "b",
+                "a\n".repeat(100) + "c",
+                new DiffBudget(100, Integer.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void formatDiffTooManyEdits() {
+        runBudgetExceededTest(
+                "a\n".repeat(100) + "b\nc\nd",
+                "a\n".repeat(100) + "e\nf\ng",
+                new DiffBudget(Integer.MAX_VALUE, 5, Long.MAX_VALUE));
+    }
+
+    @Test
+    void formatDiffTooManyEdits_linearSpace() {
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append(i % 3).append('\n');
+            actual.append(i % 5).append('\n');
+        }
+        runBudgetExceededTest(
+                expected.toString(),
+                actual.toString(),
+                new DiffBudget(Integer.MAX_VALUE, 3000, Long.MAX_VALUE));
+    }
+
+    @Test
+    void formatDiffTimeout() {
+        runBudgetExceededTest(
+                "a\n".repeat(100) + "b",
+                "a\n".repeat(100) + "c",
+                new DiffBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, -1));
+    }
+
+    @Test
+    void makeComparisonFailure() {
+        Throwable cause = new Throwable("cause");
+        AssertionError failure =
+                Platform.makeComparisonFailure(
+                        List.of("hello"),
+                        List.of(fact("first", "value")),
+                        "expected",
+                        "actual",
+                        cause,
+                        true);
+
+        assertThat(failure).isInstanceOf(ComparisonFailureWithFacts.class);
+        ComparisonFailureWithFacts comparisonFailure = (ComparisonFailureWithFacts) failure;
+        assertThat(comparisonFailure.facts().get(0).key).isEqualTo("first");
+        assertThat(comparisonFailure.getExpected()).isEqualTo("expected");
+        assertThat(comparisonFailure.getActual()).isEqualTo("actual");
+        assertThat(comparisonFailure).hasCauseThat().isSameInstanceAs(cause);
+    }
+
     @Test
     void testSerialization_ComparisonFailureWithFacts() {
         List<String> messages = List.of("hello");
@@ -207,6 +291,15 @@ class ComparisonFailureWithFactsTest {
         assertThat(facts.get(0).value).isEqualTo(expectedDiff);
     }
 
+    private static void runBudgetExceededTest(String expected, String actual, DiffBudget budget) {
+        List<Fact> facts = formatExpectedAndActual(expected, actual, budget);
+        assertThat(facts).hasSize(2);
+        assertThat(facts.get(0).key).isEqualTo("expected");
+        assertThat(facts.get(1).key).isEqualTo("but was");
+        assertThat(facts.get(0).value).isEqualTo(expected);
+        assertThat(facts.get(1).value).isEqualTo(actual);
+    }
+
     private static String joinNewline(String... strings) {
         return String.join("\n", strings);
     }
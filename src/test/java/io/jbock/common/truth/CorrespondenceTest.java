@@ -713,4 +713,62 @@ final class CorrespondenceTest extends BaseSubjectTestCase {
                 .factValue("first exception", 1)
                 .startsWith("formatDiff(null, 5) threw java.lang.NullPointerException");
     }
+
+    // Tests of bucketedBy.
+
+    private static final Correspondence<String, Integer> LENGTHS_BUCKETED =
+            LENGTHS_WITH_DIFF.bucketedBy(String::length, e -> e);
+
+    @Test
+    void testBucketedBy_compare() {
+        // The compare behaviour should be the same as the wrapped correspondence.
+        assertThat(LENGTHS_BUCKETED.compare("foo", 3)).isTrue();
+        assertThat(LENGTHS_BUCKETED.compare("foo", 4)).isFalse();
+    }
+
+    @Test
+    void testBucketedBy_formatDiff() {
+        // The formatDiff behaviour should be the same as the wrapped correspondence.
+        assertThat(LENGTHS_BUCKETED.formatDiff("foo", 4)).isEqualTo("-1");
+    }
+
+    @Test
+    void testBucketedBy_toString() {
+        assertThat(LENGTHS_BUCKETED.toString()).isEqualTo("has a length of");
+    }
+
+    @Test
+    void testBucketedBy_keptByFormattingDiffsUsing() {
+        Correspondence<String, Integer> correspondence =
+                Correspondence.<String, Integer>from((a, e) -> a.length() == e, "has a length of")
+                        .bucketedBy(String::length, e -> e)
+                        .formattingDiffsUsing((a, e) -> Integer.toString(a.length() - e));
+        assertThat(correspondence.bucketing()).isNotNull();
+        assertThat(Correspondence.from(String::equals, "equals").bucketing()).isNull();
+    }
+
+    @Test
+    void testBucketedBy_viaIterableSubjectContainsExactly_failure() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(List.of("feet", "gallons"))
+                        .comparingElementsUsing(LENGTHS_BUCKETED)
+                        .containsExactly(5, 4));
+        assertFailureKeys(
+                failure,
+                "missing (1)",
+                "unexpected (1)",
+                "#1",
+                "diff",
+                "---",
+                "expected",
+                "testing whether",
+                "but was");
+        assertFailureValue(
+                failure,
+                "missing (1)", "5");
+        assertFailureValue(
+                failure,
+                "diff", "2");
+    }
 }
@@ -17,11 +17,13 @@ package io.jbock.common.truth;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static io.jbock.common.truth.Truth.assertThat;
 import static io.jbock.common.truth.Truth.assertWithMessage;
 import static io.jbock.common.truth.Truth.assert_;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.junit.jupiter.api.Assertions.fail;
 
 /**
  * Tests (and effectively sample code) for custom error message for checks.
@@ -77,30 +79,112 @@ class CustomFailureMessageTest extends BaseSubjectTestCase {
     }
 
     @Test
-    void extraPlaceholderThrowsIae() {
-        try {
-            assert_().withMessage("This is a %s %s", "custom").that(true).isTrue();
-            fail("Should have thrown");
-        } catch (IllegalArgumentException expected) {
-        }
+    void extraPlaceholderIsFormattedLeniently() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assert_().withMessage("This is a %s %s", "custom").that(true).isFalse());
+        assertThat(failure)
+                .hasMessageThat()
+                .startsWith(
+                        "This is a %s %s [custom] (incorrect number of args (1) for the given"
+                                + " placeholders (2))\n");
     }
 
     @Test
-    void missingPlaceholderThrowsIae() {
-        try {
-            assert_().withMessage("This is a %s", "custom", "message").that(true).isTrue();
-            fail("Should have thrown");
-        } catch (IllegalArgumentException expected) {
-        }
+    void missingPlaceholderIsFormattedLeniently() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assert_()
+                        .withMessage("This is a %s", "custom", "message")
+                        .that(true)
+                        .isFalse());
+        assertThat(failure)
+                .hasMessageThat()
+                .startsWith(
+                        "This is a %s [custom, message] (incorrect number of args (2) for the given"
+                                + " placeholders (1))\n");
+    }
+
+    @Test
+    void noPlaceholdersWithArgsIsFormattedLeniently() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assert_()
+                        .withMessage("This is a custom message", "bad arg")
+                        .that(true)
+                        .isFalse());
+        assertThat(failure)
+                .hasMessageThat()
+                .startsWith(
+                        "This is a custom message [bad arg] (incorrect number of args (1) for the"
+                                + " given placeholders (0))\n");
+        assertFailureKeys(failure, "expected to be false");
+    }
+
+    @Test
+    void throwingArgumentIsFormattedLeniently() {
+        Object toStringThrows =
+                new Object() {
+                    @Override
+                    public String toString() {
+                        throw new RuntimeException("Don't call me!");
+                    }
+                };
+        List<AssertionError> failures = new ArrayList<>();
+        StandardSubjectBuilder expect = StandardSubjectBuilder.forCustomFailureStrategy(failures::add);
+        expect.withMessage("value: %s", toStringThrows).that(true).isFalse();
+        assertThat(failures).hasSize(1);
+        assertThat(failures.get(0))
+                .hasMessageThat()
+                .contains("value: %s [<" + toStringThrows.getClass().getName() + "@");
+        assertThat(failures.get(0))
+                .hasMessageThat()
+                .contains(" threw java.lang.RuntimeException>] (could not format: ");
     }
 
     @Test
-    void noPlaceholdersWithArgsThrowsIae() {
-        try {
-            assert_().withMessage("This is a custom message", "bad arg").that(true).isTrue();
-            fail("Should have thrown");
-        } catch (IllegalArgumentException expected) {
+    void placeholdersArentValidatedIfTheAssertionPasses() {
+        assert_().withMessage("This is a %s %s", "custom").that(true).isTrue();
+        assert_().withMessage("This is a custom message", "bad arg").that(true).isTrue();
+    }
+
+    @Test
+    void messageIsFormattedOncePerFailure() {
+        int[] calls = new int[1];
+        Object counting =
+                new Object() {
+                    @Override
+                    public String toString() {
+                        calls[0]++;
+                        return "counted";
+                    }
+                };
+        List<AssertionError> failures = new ArrayList<>();
+        StandardSubjectBuilder expect = StandardSubjectBuilder.forCustomFailureStrategy(failures::add);
+        expect.withMessage("first %s", counting).that(false).isTrue();
+        expect.withMessage("second %s", counting).that("a").isEqualTo("b");
+        assertThat(failures).hasSize(2);
+        assertThat(calls[0]).isEqualTo(2);
+
+        for (AssertionError failure : failures) {
+            assertThat(failure.getMessage()).contains("counted");
+            assertThat(failure.toString()).contains("counted");
         }
+        assertThat(calls[0]).isEqualTo(2);
+    }
+
+    @Test
+    void messageShowsArgumentsAsOfTheFailure() {
+        List<String> state = new ArrayList<>(List.of("before"));
+        List<AssertionError> failures = new ArrayList<>();
+        StandardSubjectBuilder expect =
+                StandardSubjectBuilder.forCustomFailureStrategy(failures::add)
+                        .withMessage("state: %s", state);
+        expect.that(false).isTrue();
+        state.set(0, "after");
+        expect.that(false).isTrue();
+        assertThat(failures.get(0)).hasMessageThat().startsWith("state: [before]\n");
+        assertThat(failures.get(1)).hasMessageThat().startsWith("state: [after]\n");
     }
 
     @Test
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2020 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static io.jbock.common.truth.DiffUtils.generateUnifiedDiff;
+import static io.jbock.common.truth.Truth.assertThat;
+import static io.jbock.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** Tests for {@link DiffUtils}. */
+final class DiffUtilsTest {
+
+    // Large enough to keep every line of the inputs below in a single block.
+    private static final int FULL_CONTEXT = 100_000;
+
+    @Test
+    void identical() {
+        assertThat(generateUnifiedDiff(lines("a", "b"), lines("a", "b"), 3)).isEmpty();
+    }
+
+    @Test
+    void oneSideEmpty() {
+        assertThat(generateUnifiedDiff(lines(), lines("a", "b"), 3))
+                .containsExactly("@@ -1,0 +1,2 @@", "+a", "+b")
+                .inOrder();
+        assertThat(generateUnifiedDiff(lines("a", "b"), lines(), 3))
+                .containsExactly("@@ -1,2 +1,0 @@", "-a", "-b")
+                .inOrder();
+    }
+
+    @Test
+    void prefersSameSolutionAsDiffCommandLineTool() {
+        assertThat(generateUnifiedDiff(lines("a", "b", "c"), lines("c", "b", "a"), 3))
+                .containsExactly("@@ -1,3 +1,3 @@", "-a", "-b", " c", "+b", "+a")
+                .inOrder();
+    }
+
+    @Test
+    void randomAgainstLongestCommonSubsequence() {
+        Random rng = new Random(0x5eed);
+        for (int i = 0; i < 2000; i++) {
+            List<String> original = randomLines(rng, rng.nextInt(30), 1 + rng.nextInt(4));
+            List<String> revised = randomLines(rng, rng.nextInt(30), 1 + rng.nextInt(4));
+            assertWithMessage("diff of %s and %s", original, revised)
+                    .that(generateUnifiedDiff(original, revised, FULL_CONTEXT))
+                    .containsExactlyElementsIn(lcsDiff(original, revised))
+                    .inOrder();
+        }
+    }
+
+    @Test
+    void manyEdits_shortestEditScript() {
+        Random rng = new Random(0xd1ff);
+        List<String> original = randomLines(rng, 3000, 10);
+        List<String> revised = randomLines(rng, 3000, 10);
+        List<String> diff = generateUnifiedDiff(original, revised, FULL_CONTEXT);
+        List<String> expectedDiff = lcsDiff(original, revised);
+        assertThat(editCount(expectedDiff)).isGreaterThan(2048);
+
+        List<String> diffOriginal = new ArrayList<>();
+        List<String> diffRevised = new ArrayList<>();
+        for (String line : diff.subList(1, diff.size())) {
+            if (!line.startsWith("+")) {
+                diffOriginal.add(line.substring(1));
+            }
+            if (!line.startsWith("-")) {
+                diffRevised.add(line.substring(1));
+            }
+        }
+        assertThat(diffOriginal).isEqualTo(original);
+        assertThat(diffRevised).isEqualTo(revised);
+        assertThat(editCount(diff)).isEqualTo(editCount(expectedDiff));
+    }
+
+    @Test
+    void largeInputWithOneDifference() {
+        List<String> original = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            original.add("line " + i);
+        }
+        List<String> revised = new ArrayList<>(original);
+        revised.set(25_000, "changed");
+        assertThat(generateUnifiedDiff(original, revised, 1))
+                .containsExactly(
+                        "@@ -25000,3 +25000,3 @@",
+                        " line 24999",
+                        "-line 25000",
+                        "+changed",
+                        " line 25001")
+                .inOrder();
+    }
+
+    @Test
+    void intralineDiff() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            words.add("word" + i);
+        }
+        String original = String.join(" ", words);
+        words.set(50, "changed");
+        String revised = String.join(" ", words);
+        assertThat(generateUnifiedDiff(lines("a", original), lines("b", revised), 3))
+                .containsExactly(
+                        "@@ -1,2 +1,2 @@",
+                        "-a",
+                        "+b",
+                        "~…ord47 word48 word49 [-word50-]{+changed+} word51 word52 word5…")
+                .inOrder();
+    }
+
+    @Test
+    void intralineDiff_sharesEditBudget() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            words.add("word" + i);
+        }
+        String original = String.join(" ", words);
+        words.set(50, "changed");
+        String oneChange = String.join(" ", words);
+        words.set(10, "changed");
+        words.set(90, "changed");
+        String threeChanges = String.join(" ", words);
+        // The line diff takes 4 edits. The first word diff takes 2 of the 6 which are left, so the
+        // second one, which needs 6, doesn't fit.
+        List<String> diff =
+                generateUnifiedDiff(
+                        lines(original, original),
+                        lines(oneChange, threeChanges),
+                        0,
+                        10,
+                        Long.MAX_VALUE);
+        assertThat(diff)
+                .containsExactly(
+                        "@@ -1,2 +1,2 @@",
+                        "~…ord47 word48 word49 [-word50-]{+changed+} word51 word52 word5…",
+                        "-" + original,
+                        "+" + threeChanges)
+                .inOrder();
+    }
+
+    @Test
+    void intralineDiff_startAndEndOfLine() {
+        String middle = " unchanged".repeat(30);
+        assertThat(generateUnifiedDiff(lines("a" + middle + " b"), lines("c" + middle + " d"), 3))
+                .containsExactly(
+                        "@@ -1,1 +1,1 @@",
+                        "~[-a-]{+c+} unchanged unchanged…unchanged unchanged [-b-]{+d+}")
+                .inOrder();
+    }
+
+    @Test
+    void paths_sameAsLists(@TempDir Path tempDir) throws IOException {
+        Random rng = new Random(0xf11e);
+        Path originalPath = tempDir.resolve("original");
+        Path revisedPath = tempDir.resolve("revised");
+        for (int i = 0; i < 200; i++) {
+            List<String> original = randomLines(rng, rng.nextInt(30), 1 + rng.nextInt(4));
+            List<String> revised = randomLines(rng, rng.nextInt(30), 1 + rng.nextInt(4));
+            Files.write(originalPath, original);
+            Files.write(revisedPath, revised);
+            assertWithMessage("diff of %s and %s", original, revised)
+                    .that(
+                            generateUnifiedDiff(
+                                    originalPath,
+                                    revisedPath,
+                                    UTF_8,
+                                    3,
+                                    Integer.MAX_VALUE,
+                                    Integer.MAX_VALUE,
+                                    Long.MAX_VALUE))
+                    .isEqualTo(generateUnifiedDiff(original, revised, 3));
+        }
+    }
+
+    @Test
+    void paths_tooManyLinesBetweenCommonPrefixAndSuffix(@TempDir Path tempDir) throws IOException {
+        Path originalPath = tempDir.resolve("original");
+        Path revisedPath = tempDir.resolve("revised");
+        Files.write(originalPath, lines("a", "b", "c", "d"));
+        Files.write(revisedPath, lines("a", "x", "y", "z", "d"));
+        assertThat(
+                        generateUnifiedDiff(
+                                originalPath,
+                                revisedPath,
+                                UTF_8,
+                                0,
+                                2,
+                                Integer.MAX_VALUE,
+                                Long.MAX_VALUE))
+                .isNull();
+        Files.write(revisedPath, lines("a", "x", "c", "d"));
+        assertThat(
+                        generateUnifiedDiff(
+                                originalPath,
+                                revisedPath,
+                                UTF_8,
+                                0,
+                                2,
+                                Integer.MAX_VALUE,
+                                Long.MAX_VALUE))
+                .containsExactly("@@ -2,1 +2,1 @@", "-b", "+x")
+                .inOrder();
+    }
+
+    private static List<String> lines(String... lines) {
+        List<String> result = new ArrayList<>();
+        Collections.addAll(result, lines);
+        return result;
+    }
+
+    private static List<String> randomLines(Random rng, int size, int distinctLines) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            result.add(String.valueOf((char) ('a' + rng.nextInt(distinctLines))));
+        }
+        return result;
+    }
+
+    private static int editCount(List<String> diff) {
+        int count = 0;
+        for (String line : diff) {
+            if (line.startsWith("+") || line.startsWith("-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the expected diff of the given lines with full context, using the dynamic programming
+     * solution for the longest common subsequence and the same preference among multiple solutions
+     * as the {@code diff} command line tool.
+     */
+    private static List<String> lcsDiff(List<String> original, List<String> revised) {
+        int n = original.size();
+        int m = revised.size();
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                if (original.get(i - 1).equals(revised.get(j - 1))) {
+                    lcs[i][j] = lcs[i - 1][j - 1] + 1;
+                } else {
+                    lcs[i][j] = Math.max(lcs[i][j - 1], lcs[i - 1][j]);
+                }
+            }
+        }
+        if (lcs[n][m] == n && n == m) {
+            return new ArrayList<>();
+        }
+        List<String> diff = new ArrayList<>();
+        int i = n;
+        int j = m;
+        while (i > 0 || j > 0) {
+            if (i > 0
+                    && j > 0
+                    && original.get(i - 1).equals(revised.get(j - 1))
+                    && lcs[i - 1][j - 1] + 1 > lcs[i - 1][j]
+                    && lcs[i - 1][j - 1] + 1 > lcs[i][j - 1]) {
+                diff.add(" " + original.get(--i));
+                j--;
+            } else if (j > 0 && (i == 0 || lcs[i][j - 1] >= lcs[i - 1][j])) {
+                diff.add("+" + revised.get(--j));
+            } else {
+                diff.add("-" + original.get(--i));
+            }
+        }
+        diff.add("@@ -1," + n + " +1," + m + " @@");
+        Collections.reverse(diff);
+        return diff;
+    }
+}
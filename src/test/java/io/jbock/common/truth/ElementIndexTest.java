@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static io.jbock.common.truth.ElementIndex.hashCodeMayBeInconsistent;
+import static io.jbock.common.truth.Truth.assertThat;
+import static io.jbock.common.truth.Truth.assertWithMessage;
+
+/** Tests for {@link ElementIndex}. */
+final class ElementIndexTest {
+
+    @Test
+    void hashCodeConsistency() {
+        assertThat(hashCodeMayBeInconsistent(null)).isFalse();
+        assertThat(hashCodeMayBeInconsistent("a")).isFalse();
+        assertThat(hashCodeMayBeInconsistent(new Object())).isFalse();
+        assertThat(hashCodeMayBeInconsistent(new EqualsWithoutHashCode(1))).isTrue();
+    }
+
+    @Test
+    void take() {
+        ElementIndex index = new ElementIndex(List.of("a", "b", "a", "c", "a"));
+        assertThat(index.take("a", 1)).isEqualTo(2);
+        assertThat(index.take("a", 3)).isEqualTo(4);
+        assertThat(index.take("a", 5)).isEqualTo(0);
+        assertThat(index.take("a", 5)).isEqualTo(-1);
+        assertThat(index.take("d", 5)).isEqualTo(-1);
+        assertThat(index.remaining()).containsExactly("b", "c").inOrder();
+    }
+
+    @Test
+    void takeWithThrowingHashCode() {
+        ElementIndex index =
+                new ElementIndex(List.of("a", new HashCodeThrows(1), "b", new HashCodeThrows(1)));
+        assertThat(index.take(new HashCodeThrows(1), 2)).isEqualTo(3);
+        assertThat(index.take("b", 4)).isEqualTo(2);
+        assertThat(index.take(new HashCodeThrows(1), 4)).isEqualTo(1);
+        assertThat(index.take(new HashCodeThrows(1), 4)).isEqualTo(-1);
+        assertThat(index.remaining()).containsExactly("a");
+    }
+
+    @Test
+    void randomAgainstLinearSearch() {
+        Random rng = new Random(0xa71ea57);
+        for (int i = 0; i < 2000; i++) {
+            List<Object> elements = randomElements(rng, rng.nextInt(20));
+            List<Object> lookups = randomElements(rng, rng.nextInt(20));
+            ElementIndex index = new ElementIndex(elements);
+            boolean[] taken = new boolean[elements.size()];
+            int cursor = 0;
+            for (Object lookup : lookups) {
+                int expected = linearTake(elements, taken, lookup, cursor);
+                assertWithMessage("take(%s, %s) from %s", lookup, cursor, elements)
+                        .that(index.take(lookup, cursor))
+                        .isEqualTo(expected);
+                // Move the cursor as containsAtLeastElementsIn does, or sometimes to the end, as
+                // containsExactlyElementsIn does.
+                if (expected >= cursor) {
+                    cursor = expected + 1;
+                }
+                if (rng.nextInt(10) == 0) {
+                    cursor = elements.size();
+                }
+            }
+            List<Object> remaining = new ArrayList<>();
+            for (int position = 0; position < elements.size(); position++) {
+                if (!taken[position]) {
+                    remaining.add(elements.get(position));
+                }
+            }
+            assertThat(index.remaining()).containsExactlyElementsIn(remaining).inOrder();
+        }
+    }
+
+    /** Takes an element in the same way as {@link ElementIndex#take}, by linear search. */
+    private static int linearTake(
+            List<Object> elements, boolean[] taken, Object element, int cursor) {
+        int result = -1;
+        for (int position = cursor; position < elements.size() && result == -1; position++) {
+            if (!taken[position] && Objects.equals(element, elements.get(position))) {
+                result = position;
+            }
+        }
+        for (int position = 0; position < cursor && result == -1; position++) {
+            if (!taken[position] && Objects.equals(element, elements.get(position))) {
+                result = position;
+            }
+        }
+        if (result != -1) {
+            taken[result] = true;
+        }
+        return result;
+    }
+
+    /**
+     * Returns elements with few distinct values. Some of them are equal to each other but have
+     * different hash codes, and some can't be hashed at all.
+     */
+    private static List<Object> randomElements(Random rng, int size) {
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int value = rng.nextInt(5);
+            switch (rng.nextInt(5)) {
+                case 0:
+                    result.add(new EqualsWithoutHashCode(value));
+                    break;
+                case 1:
+                    result.add(null);
+                    break;
+                case 2:
+                    result.add(new HashCodeThrows(value));
+                    break;
+                default:
+                    result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Equal to other instances with the same value, and to integers with the same value, but has an
+     * identity hash code.
+     */
+    private static final class EqualsWithoutHashCode {
+        final int value;
+
+        EqualsWithoutHashCode(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof EqualsWithoutHashCode) {
+                return value == ((EqualsWithoutHashCode) other).value;
+            }
+            return other instanceof Integer && value == (Integer) other;
+        }
+
+        @Override
+        public String toString() {
+            return "E" + value;
+        }
+    }
+
+    /** Equal to other instances with the same value, but has a {@code hashCode} which throws. */
+    private static final class HashCodeThrows {
+        final int value;
+
+        HashCodeThrows(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof HashCodeThrows && value == ((HashCodeThrows) other).value;
+        }
+
+        @Override
+        public int hashCode() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "H" + value;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static io.jbock.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link Expect}. */
+final class ExpectTest {
+
+    @Test
+    void passes() {
+        Expect expect = Expect.create();
+        expect.that(1).isEqualTo(1);
+        expect.that("abc").contains("b");
+        assertThat(expect.hasFailures()).isFalse();
+        expect.verify();
+    }
+
+    @Test
+    void reportsAllFailuresInOrder() {
+        Expect expect = Expect.create();
+        expect.that(1).isEqualTo(2);
+        expect.that(3).isEqualTo(3);
+        expect.withMessage("message").that("abc").contains("x");
+        assertThat(expect.hasFailures()).isTrue();
+        AssertionError failure = assertThrows(AssertionError.class, expect::verify);
+        assertThat(failure)
+                .hasMessageThat()
+                .isEqualTo(
+                        "2 expectations failed:\n"
+                                + "  1. expected: 2\n"
+                                + "     but was : 1\n"
+                                + "  2. message\n"
+                                + "     expected to contain: x\n"
+                                + "     but was            : abc\n");
+        assertThat(failure.getSuppressed()).hasLength(2);
+        assertThat(failure.getSuppressed()[1]).hasMessageThat().startsWith("message\n");
+    }
+
+    @Test
+    void verifyClearsFailures() {
+        Expect expect = Expect.create();
+        expect.that(true).isFalse();
+        assertThrows(AssertionError.class, expect::verify);
+        assertThat(expect.hasFailures()).isFalse();
+        expect.verify();
+    }
+
+    @Test
+    void manyThreads() throws InterruptedException {
+        Expect expect = Expect.create();
+        int threadCount = 16;
+        int failuresPerThread = 1_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < failuresPerThread; i++) {
+                    expect.withMessage("%s", thread).that(i).isEqualTo(-1);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        AssertionError failure = assertThrows(AssertionError.class, expect::verify);
+        assertThat(failure)
+                .hasMessageThat()
+                .startsWith(threadCount * failuresPerThread + " expectations failed:\n");
+        Throwable[] failures = failure.getSuppressed();
+        assertThat(failures).hasLength(threadCount * failuresPerThread);
+        // The failures of each thread are reported in the order in which they occurred.
+        int[] next = new int[threadCount];
+        for (Throwable each : failures) {
+            String[] lines = each.getMessage().split("\n");
+            int thread = Integer.parseInt(lines[0]);
+            assertThat(lines[2]).isEqualTo("but was : " + next[thread]++);
+        }
+    }
+}
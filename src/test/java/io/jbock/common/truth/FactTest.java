@@ -22,6 +22,7 @@ import java.util.List;
 
 import static io.jbock.common.truth.Fact.fact;
 import static io.jbock.common.truth.Fact.makeMessage;
+import static io.jbock.common.truth.Fact.renderedFact;
 import static io.jbock.common.truth.Fact.simpleFact;
 import static io.jbock.common.truth.Truth.assertThat;
 
@@ -32,6 +33,13 @@ class FactTest {
         assertThat(fact("foo", "bar").toString()).isEqualTo("foo: bar");
     }
 
+    @Test
+    void valueIsNotShortened() {
+        String value = "x".repeat(2_000_000);
+        assertThat(fact("foo", value).value).isEqualTo(value);
+        assertThat(renderedFact("foo", value).value).contains(" more characters ");
+    }
+
     @Test
     void stringWithoutValue() {
         assertThat(simpleFact("foo").toString()).isEqualTo("foo");
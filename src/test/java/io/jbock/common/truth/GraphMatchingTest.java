@@ -29,6 +29,7 @@ import java.util.Random;
 import java.util.Set;
 
 import static io.jbock.common.truth.GraphMatching.maximumCardinalityBipartiteMatching;
+import static io.jbock.common.truth.Truth.assertThat;
 import static io.jbock.common.truth.Truth.assertWithMessage;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -109,6 +110,94 @@ public final class GraphMatchingTest {
         }
     }
 
+    @Test
+    void maximumCardinalityBipartiteMatching_indexedRandom8x8() {
+        Random rng = new Random(0x1de7ed);
+        for (int i = 0; i < 100; i++) {
+            TestInstance.fromBits(8, 8, randomBits(8 * 8, 0.25, rng)).testIndexedAgainstBruteForce();
+        }
+    }
+
+    @Test
+    void maximumCardinalityBipartiteMatching_indexedLargeCycle() {
+        // Each LHS vertex i is connected to the RHS vertices i and i + 1 (wrapping around), which has
+        // exactly two perfect matchings.
+        int size = 100_000;
+        int[] edgeStarts = new int[size + 1];
+        int[] edgeTargets = new int[2 * size];
+        for (int lhs = 0; lhs < size; lhs++) {
+            edgeStarts[lhs + 1] = 2 * (lhs + 1);
+            edgeTargets[2 * lhs] = (lhs + 1) % size;
+            edgeTargets[2 * lhs + 1] = lhs;
+        }
+        int[] lhsMatches = maximumCardinalityBipartiteMatching(size, edgeStarts, edgeTargets);
+        assertIsIndexedMatching(size, edgeStarts, edgeTargets, lhsMatches);
+        assertThat(matchedCount(lhsMatches)).isEqualTo(size);
+    }
+
+    @Test
+    void maximumCardinalityBipartiteMatching_manyComponents() {
+        // Many copies of a component where the greedy matching takes the wrong edge: L0 -> {R0, R1},
+        // L1 -> {R0}, L2 -> {R1, R2}. Only the augmenting path L1 R0 L0 R1 L2 R2 completes it. Every
+        // copy is followed by a component which the greedy matching already completes, and by an
+        // isolated LHS vertex.
+        int copies = 20_000;
+        int[] edgeStarts = new int[5 * copies + 1];
+        int[] edgeTargets = new int[6 * copies];
+        int edge = 0;
+        for (int copy = 0; copy < copies; copy++) {
+            int rhs = 4 * copy;
+            int[][] adjacency = {{rhs, rhs + 1}, {rhs}, {rhs + 1, rhs + 2}, {rhs + 3}, {}};
+            for (int i = 0; i < adjacency.length; i++) {
+                for (int target : adjacency[i]) {
+                    edgeTargets[edge++] = target;
+                }
+                edgeStarts[5 * copy + i + 1] = edge;
+            }
+        }
+        int[] lhsMatches = maximumCardinalityBipartiteMatching(4 * copies, edgeStarts, edgeTargets);
+        assertIsIndexedMatching(4 * copies, edgeStarts, edgeTargets, lhsMatches);
+        assertThat(matchedCount(lhsMatches)).isEqualTo(4 * copies);
+    }
+
+    @Test
+    void maximumCardinalityBipartiteMatching_longAugmentingPathInSmallStack() throws Exception {
+        // LHS vertex i prefers the RHS vertex i + 1 and is also connected to the RHS vertex i, except
+        // that the last LHS vertex is only connected to the last RHS vertex. The first phase matches
+        // every LHS vertex to its preferred RHS vertex except the last one, which can then only be
+        // matched by an augmenting path which runs through the whole graph.
+        int size = 1_000_000;
+        int[] edgeStarts = new int[size + 1];
+        int[] edgeTargets = new int[2 * size - 1];
+        for (int lhs = 0; lhs < size - 1; lhs++) {
+            edgeStarts[lhs + 1] = 2 * (lhs + 1);
+            edgeTargets[2 * lhs] = lhs + 1;
+            edgeTargets[2 * lhs + 1] = lhs;
+        }
+        edgeStarts[size] = 2 * size - 1;
+        edgeTargets[2 * size - 2] = size - 1;
+        int[][] result = new int[1][];
+        Throwable[] thrown = new Throwable[1];
+        Thread thread =
+                new Thread(
+                        null,
+                        () -> {
+                            try {
+                                result[0] =
+                                        maximumCardinalityBipartiteMatching(size, edgeStarts, edgeTargets);
+                            } catch (Throwable t) {
+                                thrown[0] = t;
+                            }
+                        },
+                        "small-stack",
+                        512 * 1024);
+        thread.start();
+        thread.join();
+        assertThat(thrown[0]).isNull();
+        assertIsIndexedMatching(size, edgeStarts, edgeTargets, result[0]);
+        assertThat(matchedCount(result[0])).isEqualTo(size);
+    }
+
     /** Representation of a bipartite graph to be used for testing. */
     private static class TestInstance {
 
@@ -186,6 +275,40 @@ public final class GraphMatchingTest {
                     .hasSize(expected.size());
         }
 
+        /**
+         * Finds the maximum bipartite matching using the index-based method under test and asserts
+         * both that it is actually a matching of this bipartite graph and that it has the same size as
+         * a maximum bipartite matching found by a brute-force approach.
+         */
+        void testIndexedAgainstBruteForce() {
+            List<String> rhsVertices = new ArrayList<>();
+            for (Set<String> rhsSet : edges.values()) {
+                for (String rhs : rhsSet) {
+                    if (!rhsVertices.contains(rhs)) {
+                        rhsVertices.add(rhs);
+                    }
+                }
+            }
+            int[] edgeStarts = new int[lhsVertices.size() + 1];
+            List<Integer> edgeTargets = new ArrayList<>();
+            for (int lhs = 0; lhs < lhsVertices.size(); lhs++) {
+                for (String rhs : edges.get(lhsVertices.get(lhs))) {
+                    edgeTargets.add(rhsVertices.indexOf(rhs));
+                }
+                edgeStarts[lhs + 1] = edgeTargets.size();
+            }
+            int[] targets = edgeTargets.stream().mapToInt(Integer::intValue).toArray();
+            int[] lhsMatches =
+                    maximumCardinalityBipartiteMatching(rhsVertices.size(), edgeStarts, targets);
+            assertIsIndexedMatching(rhsVertices.size(), edgeStarts, targets, lhsMatches);
+            assertWithMessage(
+                    "The returned matching for the bipartite graph <%s> was not the same size as "
+                            + "the brute-force maximal matching",
+                    edges)
+                    .that(matchedCount(lhsMatches))
+                    .isEqualTo(bruteForceMaximalMatching().size());
+        }
+
         /**
          * Finds the maximum bipartite matching using the method under test and asserts both that it is
          * actually a matching of this bipartite graph and that it has the expected size.
@@ -394,6 +517,40 @@ public final class GraphMatchingTest {
         }
     }
 
+    /**
+     * Asserts that the result of the index-based matching only uses edges of the given graph and
+     * uses each RHS vertex at most once.
+     */
+    private static void assertIsIndexedMatching(
+            int rhsCount, int[] edgeStarts, int[] edgeTargets, int[] lhsMatches) {
+        assertThat(lhsMatches.length).isEqualTo(edgeStarts.length - 1);
+        BitSet usedRhs = new BitSet(rhsCount);
+        for (int lhs = 0; lhs < lhsMatches.length; lhs++) {
+            int rhs = lhsMatches[lhs];
+            if (rhs == GraphMatching.UNMATCHED) {
+                continue;
+            }
+            boolean isEdge = false;
+            for (int edge = edgeStarts[lhs]; edge < edgeStarts[lhs + 1]; edge++) {
+                isEdge |= edgeTargets[edge] == rhs;
+            }
+            assertTrue(isEdge, "The returned matching used an edge which is not in the graph");
+            assertTrue(!usedRhs.get(rhs), "The returned matching used an RHS vertex twice");
+            usedRhs.set(rhs);
+        }
+    }
+
+    /** Returns the number of LHS vertices which the index-based matching matched. */
+    private static int matchedCount(int[] lhsMatches) {
+        int count = 0;
+        for (int rhs : lhsMatches) {
+            if (rhs != GraphMatching.UNMATCHED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /** Returns a bitset corresponding to the binary representation of the given integer. */
     private static BitSet intBits(int intValue) {
         BitSet bits = new BitSet();
@@ -384,4 +384,11 @@ final class IntStreamSubjectTest {
                         .that(IntStream.of(1, 2, 2, 4))
                         .isInStrictOrder());
     }
+
+    @Test
+    void testInfiniteStream_shortCircuits() {
+        assertThat(IntStream.iterate(0, i -> i + 1)).isNotEmpty();
+        assertThat(IntStream.iterate(0, i -> i + 1)).contains(1_000);
+        assertThat(IntStream.iterate(0, i -> i + 1)).containsAnyOf(-1, 1_000);
+    }
 }
@@ -36,6 +36,13 @@ class IntegerSubjectTest extends BaseSubjectTestCase {
         assertThat(4).isEqualTo(4);
     }
 
+    @Test
+    void charIsNotWidened() {
+        AssertionError failure =
+                assertThrows(AssertionError.class, () -> assertThat(97).isEqualTo('b'));
+        assertFailureValue(failure, "expected", "b");
+    }
+
     @Test
     void simpleInequality() {
         assertThat(4).isNotEqualTo(5);
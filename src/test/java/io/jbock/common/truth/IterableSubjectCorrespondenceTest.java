@@ -18,8 +18,11 @@ package io.jbock.common.truth;
 import io.jbock.common.truth.TestCorrespondences.Record;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.jbock.common.truth.Correspondence.equality;
 import static io.jbock.common.truth.Correspondence.tolerance;
@@ -437,6 +440,138 @@ class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
         }
     }
 
+    @Test
+    void containsExactlyElementsIn_bucketed_onlyComparesWithinBuckets() {
+        int size = 1_000;
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            expected.add(i);
+            actual.add(size - 1 - i);
+        }
+        AtomicInteger compareCalls = new AtomicInteger();
+        Correspondence<Integer, Integer> correspondence =
+                Correspondence.<Integer, Integer>from(
+                                (a, e) -> {
+                                    compareCalls.incrementAndGet();
+                                    return a.equals(e);
+                                },
+                                "equals")
+                        .bucketedBy(a -> a % 100, e -> e % 100);
+        assertThat(actual).comparingElementsUsing(correspondence).containsExactlyElementsIn(expected);
+        // One call for the in-order check, then one call per pair within each of the 100 buckets.
+        assertThat(compareCalls.get()).isEqualTo(1 + 100 * 10 * 10);
+    }
+
+    @Test
+    void containsExactlyElementsIn_bucketed_failsMissingOneCandidate() {
+        List<Integer> expected = List.of(64, 128, 256, 128);
+        List<String> actual = List.of("+64", "+128", "0x40", "0x80");
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .comparingElementsUsing(
+                                STRING_PARSES_TO_INTEGER_CORRESPONDENCE.bucketedBy(Integer::decode, e -> e))
+                        .containsExactlyElementsIn(expected));
+        assertFailureKeys(
+                failure,
+                "missing (1)", "---", "expected", "testing whether", "but was");
+        assertFailureValue(
+                failure,
+                "missing (1)", "256");
+    }
+
+    @Test
+    void containsExactlyElementsIn_bucketed_keyFunctionThrows() {
+        // Integer.decode throws for "not a number", which is then compared with every expected element.
+        List<Integer> expected = List.of(64, 128);
+        List<String> actual = List.of("not a number", "+64");
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .comparingElementsUsing(
+                                STRING_PARSES_TO_INTEGER_CORRESPONDENCE.bucketedBy(Integer::decode, e -> e))
+                        .containsExactlyElementsIn(expected));
+        assertFailureValue(
+                failure,
+                "missing (1)", "128");
+        assertFailureValue(
+                failure,
+                "unexpected (1)", "[not a number]");
+    }
+
+    @Test
+    void containsExactlyElementsIn_bucketed_keyHashCodeThrows() {
+        // The key for 128 can't be hashed, so 128 is compared with every actual element.
+        Correspondence<String, Integer> correspondence =
+                STRING_PARSES_TO_INTEGER_CORRESPONDENCE.bucketedBy(
+                        a -> new UnhashableKey(Integer.decode(a)), UnhashableKey::new);
+        assertThat(List.of("+128", "+64"))
+                .comparingElementsUsing(correspondence)
+                .containsExactlyElementsIn(List.of(64, 128));
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(List.of("+64", "+256"))
+                        .comparingElementsUsing(correspondence)
+                        .containsExactlyElementsIn(List.of(64, 128)));
+        assertFailureValue(
+                failure,
+                "missing (1)", "128");
+        assertFailureValue(
+                failure,
+                "unexpected (1)", "[+256]");
+    }
+
+    @Test
+    void containsAtLeastElementsIn_bucketed_successOutOfOrder() {
+        List<Integer> expected = List.of(128, 64);
+        List<String> actual = List.of("fee", "+64", "+128", "fi");
+        // The actual strings carry a sign, so they are one character longer than the expected numbers.
+        Correspondence<String, Integer> correspondence =
+                STRING_PARSES_TO_INTEGER_CORRESPONDENCE.bucketedBy(
+                        String::length, e -> e.toString().length() + 1);
+        assertThat(actual).comparingElementsUsing(correspondence).containsAtLeastElementsIn(expected);
+    }
+
+    @Test
+    void containsExactlyElementsIn_tolerance_sameAsComparingEveryPair() {
+        // The candidates for a tolerance correspondence are found by sorting, which should give exactly
+        // the same results as comparing every pair.
+        Correspondence<Number, Number> comparingEveryPair =
+                Correspondence.from(
+                        (a, e) -> tolerance(0.25).compare(a, e), tolerance(0.25).toString());
+        Random rng = new Random(0x70e7a7ce);
+        double[] pool = {0.0, -0.0, 0.25, 0.5, 1.0, Double.NaN, Double.POSITIVE_INFINITY};
+        for (int i = 0; i < 500; i++) {
+            List<Number> actual = new ArrayList<>();
+            List<Number> expected = new ArrayList<>();
+            for (int j = rng.nextInt(5); j > 0; j--) {
+                actual.add(pool[rng.nextInt(pool.length)] + rng.nextInt(3) * 0.125);
+            }
+            for (int j = rng.nextInt(5) + 1; j > 0; j--) {
+                expected.add(pool[rng.nextInt(pool.length)] + rng.nextInt(3) * 0.125);
+            }
+            String viaSweep = failureMessageOrNull(
+                    () -> assertThat(actual)
+                            .comparingElementsUsing(tolerance(0.25))
+                            .containsExactlyElementsIn(expected));
+            String viaEveryPair = failureMessageOrNull(
+                    () -> assertThat(actual)
+                            .comparingElementsUsing(comparingEveryPair)
+                            .containsExactlyElementsIn(expected));
+            assertThat(viaSweep).isEqualTo(viaEveryPair);
+        }
+    }
+
+    private static String failureMessageOrNull(Runnable assertion) {
+        try {
+            assertion.run();
+            return null;
+        } catch (AssertionError e) {
+            return e.getMessage();
+        }
+    }
+
     @Test
     void containsExactlyElementsIn_failsMissingOneCandidate() {
         List<Integer> expected = List.of(64, 128, 256, 128);
@@ -2364,6 +2499,28 @@ class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
                 "diff", 1, "score:-1");
     }
 
+    /** A bucket key whose {@code hashCode} throws for the value 128. */
+    private static final class UnhashableKey {
+        final int value;
+
+        UnhashableKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof UnhashableKey && value == ((UnhashableKey) other).value;
+        }
+
+        @Override
+        public int hashCode() {
+            if (value == 128) {
+                throw new UnsupportedOperationException();
+            }
+            return value;
+        }
+    }
+
     private static final class CountsToStringCalls {
         int calls;
 
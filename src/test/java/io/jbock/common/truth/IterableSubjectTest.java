@@ -17,11 +17,17 @@ package io.jbock.common.truth;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.Stream;
 
 import static io.jbock.common.truth.Truth.assertThat;
 import static java.lang.String.CASE_INSENSITIVE_ORDER;
@@ -130,6 +136,26 @@ class IterableSubjectTest extends BaseSubjectTestCase {
                 "expected to contain", "5");
     }
 
+    @Test
+    void iterableContainsFailure_hugeIterable() {
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < 5_000_000; i++) {
+            actual.add(i);
+        }
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .contains(-1));
+        assertFailureKeys(
+                failure,
+                "expected to contain",
+                "(stopped looking for elements with the same string representation as expected ones,"
+                        + " because the iterable is too large)",
+                "but was");
+        assertThat(failure.getMessage()).contains(", 4999, … 4,990,000 more …, 4995000, ");
+        assertThat(failure.getMessage().length()).isLessThan(200_000);
+    }
+
     @Test
     void iterableDoesNotContain() {
         assertThat(asList(1, null, 3)).doesNotContain(5);
@@ -297,6 +323,31 @@ class IterableSubjectTest extends BaseSubjectTestCase {
         assertThat(iterable).containsAnyOf(3, "a", 7, "b", 0);
     }
 
+    @Test
+    void oneShotIterableIsIteratedOnce() {
+        int[] iterations = new int[1];
+        Iterable<Object> iterable = () -> {
+            iterations[0]++;
+            return asList((Object) 2, 1, "b").iterator();
+        };
+        IterableSubject subject = assertThat(iterable);
+        subject.hasSize(3);
+        subject.isNotEmpty();
+        subject.contains("b");
+        subject.containsExactly(1, 2, "b");
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> subject.containsAnyOf(3, "a"));
+        assertFailureValue(failure, "but was", "[2, 1, b]");
+        assertThat(iterations[0]).isEqualTo(1);
+    }
+
+    @Test
+    void infiniteIterableIsNotEmpty() {
+        Iterable<Integer> iterable = () -> Stream.iterate(0, i -> i + 1).iterator();
+        assertThat(iterable).isNotEmpty();
+    }
+
     @Test
     void iterableContainsAnyInIterable() {
         assertThat(asList(1, 2, 3)).containsAnyIn(asList(1, 10, 100));
@@ -1667,6 +1718,337 @@ class IterableSubjectTest extends BaseSubjectTestCase {
                                 + "containsNoneOf(...)/containsNoneIn(...) instead. Non-iterables: [a, b]");
     }
 
+    @Test
+    void containsAtLeastAndExactly_largeShuffledInput() {
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            actual.add(i % 1000);
+        }
+        List<Integer> expected = new ArrayList<>(actual);
+        Collections.shuffle(expected, new Random(0));
+        assertThat(actual).containsExactlyElementsIn(expected);
+        assertThat(actual).containsAtLeastElementsIn(expected.subList(0, 500_000));
+
+        expected.set(0, -1);
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .containsExactlyElementsIn(expected));
+        assertFailureValue(
+                failure,
+                "missing (1)", "-1");
+        assertFailureKeys(
+                failure,
+                "missing (1)",
+                "unexpected (1)",
+                "---",
+                "expected",
+                "but was");
+    }
+
+    @Test
+    void sortedSets_noHashing() {
+        TreeSet<NoHashCode> actual = new TreeSet<>();
+        TreeSet<NoHashCode> expected = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            actual.add(new NoHashCode(i));
+            expected.add(new NoHashCode(i));
+        }
+        assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+        assertThat(actual).containsAtLeastElementsIn(expected).inOrder();
+        assertThat(actual).containsNoneIn(new TreeSet<>(List.of(new NoHashCode(-1))));
+
+        // Only the failure message hashes the elements, to count duplicates.
+        TreeSet<Integer> actualInts = new TreeSet<>();
+        TreeSet<Integer> expectedInts = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            actualInts.add(i);
+            expectedInts.add(i);
+        }
+        expectedInts.remove(50);
+        expectedInts.add(100);
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actualInts)
+                        .containsExactlyElementsIn(expectedInts));
+        assertFailureKeys(
+                failure,
+                "missing (1)",
+                "unexpected (1)",
+                "---",
+                "expected",
+                "but was");
+        assertFailureValue(
+                failure,
+                "missing (1)", "100");
+        assertFailureValue(
+                failure,
+                "unexpected (1)", "50");
+    }
+
+    @Test
+    void sortedSets_differentComparators() {
+        TreeSet<String> actual = new TreeSet<>(List.of("a", "B"));
+        TreeSet<String> expected = new TreeSet<>(CASE_INSENSITIVE_ORDER);
+        expected.addAll(List.of("a", "B"));
+        assertThat(actual).containsExactlyElementsIn(expected);
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .containsExactlyElementsIn(expected)
+                        .inOrder());
+        assertFailureKeys(
+                failure,
+                "contents match, but order was wrong",
+                "expected",
+                "but was");
+    }
+
+    @Test
+    void assumingSortedBy() {
+        List<Integer> actual = asList(1, 2, 2, 3, 5);
+        assertThat(actual)
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsExactlyElementsIn(asList(1, 2, 2, 3, 5))
+                .inOrder();
+        assertThat(actual)
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsAtLeastElementsIn(asList(2, 2, 5))
+                .inOrder();
+        assertThat(actual)
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsNoneIn(asList(0, 4, 6));
+
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsAtLeastElementsIn(asList(2, 2, 2, 4)));
+        assertFailureValue(
+                failure,
+                "missing (2)", "2, 4");
+
+        failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsNoneIn(asList(0, 2, 2, 3)));
+        assertFailureValue(
+                failure,
+                "but contained", "[2, 3]");
+
+        failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList(1))
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsExactlyElementsIn(asList(2)));
+        assertFailureKeys(
+                failure,
+                "value of",
+                "expected",
+                "but was");
+    }
+
+    @Test
+    void assumingSortedBy_fallsBackIfNotSorted() {
+        assertThat(asList(3, 1, 2))
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsExactlyElementsIn(asList(1, 2, 3));
+        assertThat(asList(3, 1, 2))
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsAtLeastElementsIn(asList(1, 3));
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList(3, 1, 2))
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsNoneIn(asList(0, 3)));
+        assertFailureValue(
+                failure,
+                "but contained", "[3]");
+    }
+
+    @Test
+    void assumingSortedBy_fallsBackIfComparatorThrows() {
+        assertThat(asList(null, 1, 2))
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsExactlyElementsIn(asList(null, 1, 2))
+                .inOrder();
+        assertThat(asList(1, null, 2))
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsAtLeastElementsIn(asList(null, 2))
+                .inOrder();
+        assertThat(asList(1, 2))
+                .assumingSortedBy(Comparator.naturalOrder())
+                .containsNoneIn(asList(0, null));
+
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList(null, 1, 2))
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsAtLeastElementsIn(asList(null, 3)));
+        assertFailureValue(
+                failure,
+                "missing (1)", "3");
+
+        failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList(null, 1, 2))
+                        .assumingSortedBy(Comparator.naturalOrder())
+                        .containsNoneIn(asList(0, null)));
+        assertFailureValue(
+                failure,
+                "but contained", "[null]");
+    }
+
+    @Test
+    void assumingSortedBy_fallsBackIfInconsistentWithEquals() {
+        Comparator<String> byLength = Comparator.comparing(String::length);
+        assertThat(asList("a", "bb", "cc"))
+                .assumingSortedBy(byLength)
+                .containsExactlyElementsIn(asList("a", "cc", "bb"));
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList("a", "bb"))
+                        .assumingSortedBy(byLength)
+                        .containsExactlyElementsIn(asList("a", "cc")));
+        assertFailureValue(
+                failure,
+                "missing (1)", "cc");
+    }
+
+    @Test
+    void unsortedElementsWithThrowingHashCode() {
+        List<Object> actual = asList(new NoHashCode(2), "a", new NoHashCode(1), new NoHashCode(2));
+        assertThat(actual)
+                .containsExactlyElementsIn(
+                        asList(new NoHashCode(1), new NoHashCode(2), new NoHashCode(2), "a"));
+        assertThat(actual)
+                .containsAtLeastElementsIn(asList(new NoHashCode(2), new NoHashCode(2)))
+                .inOrder();
+        assertThat(actual)
+                .containsAtLeastElementsIn(asList("a", new NoHashCode(2)))
+                .inOrder();
+    }
+
+    /** A comparable element which must not be hashed. */
+    private static final class NoHashCode implements Comparable<NoHashCode> {
+        final int value;
+
+        NoHashCode(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(NoHashCode other) {
+            return Integer.compare(value, other.value);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof NoHashCode && value == ((NoHashCode) other).value;
+        }
+
+        @Override
+        public int hashCode() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "N" + value;
+        }
+    }
+
+    @Test
+    void eachElementSatisfies() {
+        assertThat(List.of("a", "bb", "ccc"))
+                .eachElement()
+                .satisfy((String s) -> assertThat(s).isNotEmpty());
+        assertThat(List.of()).eachElement().satisfy(e -> fail());
+    }
+
+    @Test
+    void eachElementSatisfiesFailure() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(asList(1, -2, 3, -4))
+                        .eachElement()
+                        .satisfy((Integer i) -> assertThat(i).isAtLeast(0)));
+        assertFailureKeys(
+                failure,
+                "expected each element to satisfy the assertion",
+                "but failed for",
+                "element 1",
+                "which failed with",
+                "element 3",
+                "which failed with",
+                "full contents");
+        assertFailureValue(
+                failure,
+                "but failed for", "2 of 4 elements");
+        assertFailureValue(
+                failure,
+                "element 3", "-4");
+        assertFailureValueIndexed(
+                failure,
+                "which failed with", 1, "expected to be at least: 0\nbut was                : -4");
+        assertThat(failure.getSuppressed()).hasLength(2);
+        assertThat(failure.getSuppressed()[1])
+                .hasMessageThat()
+                .isEqualTo("expected to be at least: 0\nbut was                : -4");
+        assertThat(failure.getSuppressed()[1].getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    void eachElementSatisfies_fewElementsOnCallingThread() {
+        Thread caller = Thread.currentThread();
+        assertThat(List.of(1, 2, 3))
+                .eachElement()
+                .satisfy(e -> assertThat(Thread.currentThread()).isSameInstanceAs(caller));
+    }
+
+    @Test
+    void eachElementSatisfiesFailure_manyElements() {
+        Set<Integer> actual = new LinkedHashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            actual.add(i);
+        }
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .eachElement()
+                        .satisfy((Integer i) -> assertThat(i % 1000).isNotEqualTo(999)));
+        assertFailureValue(
+                failure,
+                "but failed for", "100 of 100000 elements");
+        assertFailureValue(
+                failure,
+                "element 999", "999");
+        assertFailureValue(
+                failure,
+                "element 99999", "99999");
+    }
+
+    @Test
+    void eachElementSatisfiesFailure_tooManyToReport() {
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            actual.add(i);
+        }
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> assertThat(actual)
+                        .eachElement()
+                        .satisfy(e -> assertThat(e).isNull()));
+        assertFailureValue(
+                failure,
+                "but failed for", "1000 of 1000 elements");
+        assertThatFailure(failure).factKeys().contains("element 99");
+        assertThatFailure(failure).factKeys().doesNotContain("element 100");
+        assertThatFailure(failure).factKeys().contains("(and 900 more failures)");
+        assertThat(failure.getSuppressed()).hasLength(100);
+    }
+
     private static final class CountsToStringCalls {
         int calls;
 
@@ -16,14 +16,75 @@
 package io.jbock.common.truth;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static io.jbock.common.truth.ExpectFailure.assertThat;
+import static io.jbock.common.truth.PathSubject.paths;
 import static io.jbock.common.truth.Truth8.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class PathSubjectTest {
+    @TempDir
+    Path tempDir;
+
     @Test
     void basicEquality() {
         assertThat(Paths.get("foo")).isEqualTo(Paths.get("foo"));
     }
+
+    @Test
+    void hasSameContentAs() throws IOException {
+        Path expected = write("expected", "a\nb\nc\n");
+        Path actual = write("actual", "a\r\nb\r\nc\r\n");
+        assertThat(actual).hasSameContentAs(expected);
+    }
+
+    @Test
+    void hasSameContentAsFailure() throws IOException {
+        Path expected = write("expected", "a\n".repeat(1000) + "b\n" + "z\n".repeat(1000));
+        Path actual = write("actual", "a\n".repeat(1000) + "c\n" + "z\n".repeat(1000));
+        AssertionError failure =
+                expectFailure(whenTesting -> whenTesting.that(actual).hasSameContentAs(expected));
+        assertThat(failure)
+                .factKeys()
+                .containsExactly(
+                        "expected to have the same content as", "diff (-expected +actual)", "but was")
+                .inOrder();
+        assertThat(failure)
+                .factValue("diff (-expected +actual)")
+                .isEqualTo("@@ -998,7 +998,7 @@\n a\n a\n a\n-b\n+c\n z\n z\n z");
+    }
+
+    @Test
+    void hasSameContentAsFailureDifferentLength() throws IOException {
+        Path expected = write("expected", "a\nb\n");
+        Path actual = write("actual", "a\nb\nc\nd\n");
+        AssertionError failure =
+                expectFailure(whenTesting -> whenTesting.that(actual).hasSameContentAs(expected));
+        assertThat(failure)
+                .factValue("diff (-expected +actual)")
+                .isEqualTo("@@ -1,2 +1,4 @@\n a\n b\n+c\n+d");
+    }
+
+    @Test
+    void hasSameContentAsMissingFile() throws IOException {
+        Path expected = write("expected", "a\n");
+        Path actual = tempDir.resolve("missing");
+        assertThrows(UncheckedIOException.class, () -> assertThat(actual).hasSameContentAs(expected));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content);
+    }
+
+    private static AssertionError expectFailure(
+            ExpectFailure.SimpleSubjectBuilderCallback<PathSubject, Path> assertionCallback) {
+        return ExpectFailure.expectFailureAbout(paths(), assertionCallback);
+    }
 }
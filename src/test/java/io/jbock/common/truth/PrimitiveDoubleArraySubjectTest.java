@@ -427,6 +427,19 @@ class PrimitiveDoubleArraySubjectTest extends BaseSubjectTestCase {
                 "unexpected (1)", "3.3");
     }
 
+    @Test
+    void usingTolerance_containsExactly_primitiveDoubleArray_large() {
+        int size = 100_000;
+        double[] expected = new double[size];
+        double[] actual = new double[size];
+        for (int i = 0; i < size; i++) {
+            // Neighbouring values are closer than the tolerance, so every value has several candidates.
+            expected[i] = i * 1.0e-3;
+            actual[size - 1 - i] = i * 1.0e-3 + 1.0e-4;
+        }
+        assertThat(actual).usingTolerance(2.5e-3).containsExactly(expected);
+    }
+
     @Test
     void usingTolerance_containsExactly_primitiveDoubleArray_inOrder_success() {
         assertThat(array(1.1, TOLERABLE_2POINT2, 3.3))
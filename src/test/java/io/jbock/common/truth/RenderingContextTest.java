@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import io.jbock.common.truth.SubjectUtils.NearMissBudget;
+import io.jbock.common.truth.SubjectUtils.NearMisses;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static io.jbock.common.truth.SubjectUtils.countDuplicatesAndAddTypeInfo;
+import static io.jbock.common.truth.SubjectUtils.findNearMisses;
+import static io.jbock.common.truth.SubjectUtils.hasMatchingToStringPair;
+import static io.jbock.common.truth.SubjectUtils.retainMatchingToString;
+import static io.jbock.common.truth.Truth.assertThat;
+
+/** Tests for {@link RenderingContext}. */
+final class RenderingContextTest {
+    @Test
+    void stringValueOf() {
+        RenderingContext context = new RenderingContext();
+        Counting counting = new Counting("a");
+        assertThat(context.stringValueOf(counting)).isEqualTo("a");
+        assertThat(context.stringValueOf(counting)).isEqualTo("a");
+        assertThat(counting.calls).isEqualTo(1);
+        assertThat(context.stringValueOf(null)).isEqualTo("null");
+    }
+
+    @Test
+    void typeName() {
+        RenderingContext context = new RenderingContext();
+        assertThat(context.typeName(1)).isEqualTo("java.lang.Integer");
+        assertThat(context.typeName(null)).isEqualTo("null type");
+        assertThat(context.typeName(new SimpleImmutableEntry<>("a", 1L)))
+                .isEqualTo("Map.Entry<java.lang.String, java.lang.Long>");
+    }
+
+    @Test
+    void eachElementIsStringifiedOnce() {
+        List<Counting> actual = new ArrayList<>();
+        List<Counting> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            actual.add(new Counting("item" + i));
+            expected.add(new Counting("item" + i));
+        }
+        RenderingContext context = new RenderingContext();
+        assertThat(hasMatchingToStringPair(context, actual, expected)).isTrue();
+        String description =
+                countDuplicatesAndAddTypeInfo(
+                        context, retainMatchingToString(context, actual, expected));
+        assertThat(description).startsWith("[item0, item1, ");
+        assertThat(description).endsWith(" (" + Counting.class.getName() + ")");
+        for (Counting counting : actual) {
+            assertThat(counting.calls).isEqualTo(1);
+        }
+        for (Counting counting : expected) {
+            assertThat(counting.calls).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void findNearMisses_stopsAfterMaxMatches() {
+        Iterable<Long> actual = () -> LongStream.range(0, 1_000_000).boxed().iterator();
+        NearMisses nearMisses =
+                findNearMisses(
+                        new RenderingContext(), actual, List.of(1, 3, 5), new NearMissBudget(100, 2));
+        assertThat(nearMisses.elements).containsExactly(1L, 3L).inOrder();
+        assertThat(nearMisses.incomplete).isTrue();
+    }
+
+    @Test
+    void findNearMisses_stopsAfterMaxElements() {
+        Iterable<Long> actual = () -> LongStream.range(0, 1_000_000).boxed().iterator();
+        NearMisses nearMisses =
+                findNearMisses(
+                        new RenderingContext(), actual, List.of(1, 500), new NearMissBudget(100, 2));
+        assertThat(nearMisses.elements).containsExactly(1L);
+        assertThat(nearMisses.incomplete).isTrue();
+    }
+
+    @Test
+    void findNearMisses_skipsLargeCollections() {
+        List<Counting> actual = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            actual.add(new Counting("item" + i));
+        }
+        NearMisses nearMisses =
+                findNearMisses(
+                        new RenderingContext(),
+                        actual,
+                        List.of(new Counting("item0")),
+                        new NearMissBudget(100, 2));
+        assertThat(nearMisses.elements).isEmpty();
+        assertThat(nearMisses.incomplete).isTrue();
+        for (Counting counting : actual) {
+            assertThat(counting.calls).isEqualTo(0);
+        }
+    }
+
+    @Test
+    void findNearMisses_complete() {
+        NearMisses nearMisses =
+                findNearMisses(
+                        new RenderingContext(),
+                        List.of(1L, 2L, 3L),
+                        List.of(2, 4),
+                        new NearMissBudget(3, 2));
+        assertThat(nearMisses.elements).containsExactly(2L);
+        assertThat(nearMisses.incomplete).isFalse();
+    }
+
+    /** An object which counts the calls to its {@code toString()} and equals only itself. */
+    private static final class Counting {
+        final String string;
+        int calls;
+
+        Counting(String string) {
+            this.string = string;
+        }
+
+        @Override
+        public String toString() {
+            calls++;
+            return string;
+        }
+    }
+}
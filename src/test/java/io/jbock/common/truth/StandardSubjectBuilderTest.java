@@ -16,9 +16,12 @@
 
 package io.jbock.common.truth;
 
-
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.jbock.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /** Tests for {@link StandardSubjectBuilder}. */
@@ -33,4 +36,48 @@ final class StandardSubjectBuilderTest extends BaseSubjectTestCase {
                         .fail());
         assertThatFailure(failure).hasMessageThat().isEmpty();
     }
+
+    @Test
+    void fullStackTraceByDefault() {
+        AssertionError failure = assertThrows(
+                AssertionError.class,
+                () -> StandardSubjectBuilder.forCustomFailureStrategy(f -> {
+                            throw f;
+                        })
+                        .that(List.of(1)).isEmpty());
+        assertThat(failure.getStackTrace().length).isGreaterThan(1);
+        assertThat(failure.getStackTrace()[0].getClassName())
+                .isEqualTo(FailureMetadata.class.getName());
+    }
+
+    @Test
+    void callSiteOnlyStackTrace() {
+        List<AssertionError> failures = new ArrayList<>();
+        StandardSubjectBuilder expect =
+                StandardSubjectBuilder.forCustomFailureStrategy(
+                        new FailureStrategy() {
+                            @Override
+                            public void fail(AssertionError failure) {
+                                failures.add(failure);
+                            }
+
+                            @Override
+                            public boolean recordsFullStackTrace() {
+                                return false;
+                            }
+                        });
+        expect.that(1).isEqualTo(2);
+        expect.that("a").isEqualTo("b");
+        expect.that(List.of(1)).isEmpty();
+
+        assertThat(failures).hasSize(3);
+        for (AssertionError failure : failures) {
+            StackTraceElement[] stackTrace = failure.getStackTrace();
+            assertThat(stackTrace).hasLength(1);
+            assertThat(stackTrace[0].getClassName()).isEqualTo(getClass().getName());
+            assertThat(stackTrace[0].getMethodName()).isEqualTo("callSiteOnlyStackTrace");
+        }
+        assertThat(failures.get(1)).isInstanceOf(ComparisonFailureWithFacts.class);
+        assertThat(failures.get(1)).hasMessageThat().contains("expected: b");
+    }
 }
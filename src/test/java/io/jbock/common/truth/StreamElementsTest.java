@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.jbock.common.truth.ExpectFailure.expectFailureAbout;
+import static io.jbock.common.truth.FailureAssertions.assertFailureKeys;
+import static io.jbock.common.truth.FailureAssertions.assertFailureValue;
+import static io.jbock.common.truth.Truth.assertAbout;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link StreamElements}, with a limit of 3 kept elements. */
+final class StreamElementsTest {
+
+    @Test
+    void dropsElementsAfterLimit() {
+        LimitedSubject subject = assertAbout(limited()).that(IntStream.range(0, 10).boxed());
+        subject.elements.doesNotContain(10);
+        subject.elements.contains(2);
+        subject.elements.hasSize(10);
+        subject.elements.isNotEmpty();
+        assertThrows(IllegalStateException.class, () -> subject.elements.contains(9));
+        assertThrows(IllegalStateException.class, subject.elements::all);
+    }
+
+    @Test
+    void keepsAllElementsIfNeeded() {
+        LimitedSubject subject = assertAbout(limited()).that(IntStream.range(0, 10).boxed());
+        subject.elements.contains(1);
+        subject.elements.all().hasSize(10);
+        subject.elements.contains(9);
+    }
+
+    @Test
+    void containsFailure_droppedElements() {
+        AssertionError failure =
+                expectFailureAbout(
+                        limited(),
+                        whenTesting ->
+                                whenTesting.that(IntStream.range(0, 10).boxed()).elements.contains(10));
+        assertFailureKeys(failure, "expected to contain", "but was");
+        assertFailureValue(failure, "but was", "[0, 1, 2, … 7 more …]");
+    }
+
+    @Test
+    void isEmptyFailure_infiniteStream() {
+        AssertionError failure =
+                expectFailureAbout(
+                        limited(),
+                        whenTesting ->
+                                whenTesting.that(Stream.iterate(0, i -> i + 1)).elements.isEmpty());
+        assertFailureKeys(failure, "expected to be empty", "but was");
+        assertFailureValue(failure, "but was", "[0, 1, 2, …]");
+    }
+
+    @Test
+    void containsNoneInFailure_afterLimit() {
+        AssertionError failure =
+                expectFailureAbout(
+                        limited(),
+                        whenTesting ->
+                                whenTesting
+                                        .that(Stream.iterate(0, i -> i + 1))
+                                        .elements
+                                        .containsNoneIn(List.of(5, 6)));
+        assertFailureKeys(failure, "expected not to contain any of", "but contained", "but was");
+        assertFailureValue(failure, "but contained", "5");
+    }
+
+    private static Subject.Factory<LimitedSubject, Stream<?>> limited() {
+        return LimitedSubject::new;
+    }
+
+    private static final class LimitedSubject extends Subject {
+        final StreamElements elements;
+
+        LimitedSubject(FailureMetadata metadata, Stream<?> stream) {
+            super(metadata, stream);
+            this.elements = new StreamElements(this, stream.iterator(), 3);
+        }
+
+        @Override
+        protected String actualCustomStringRepresentation() {
+            return elements.render();
+        }
+    }
+}
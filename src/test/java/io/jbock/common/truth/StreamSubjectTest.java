@@ -356,6 +356,31 @@ final class StreamSubjectTest {
                 expectFailure(whenTesting -> whenTesting.that(Stream.of(1, 2, 2, 4)).isInStrictOrder());
     }
 
+    @Test
+    void testInfiniteStream_shortCircuits() {
+        assertThat(Stream.iterate(0, i -> i + 1)).isNotEmpty();
+        assertThat(Stream.iterate(0, i -> i + 1)).contains(1_000);
+        assertThat(Stream.iterate(0, i -> i + 1)).containsAnyOf(-1, 1_000);
+    }
+
+    @Test
+    void testInfiniteStream_doesNotContain_fails() {
+        AssertionError failure =
+                expectFailure(
+                        whenTesting -> whenTesting.that(Stream.iterate(0, i -> i + 1)).doesNotContain(2));
+        assertFailureKeys(failure, "expected not to contain", "but was");
+        assertFailureValue(failure, "expected not to contain", "2");
+    }
+
+    @Test
+    void testSeveralAssertions() {
+        StreamSubject subject = assertThat(Stream.of(1, 2, 3));
+        subject.contains(1);
+        subject.doesNotContain(4);
+        subject.containsExactly(1, 2, 3).inOrder();
+        subject.hasSize(3);
+    }
+
     private static AssertionError expectFailure(
             ExpectFailure.SimpleSubjectBuilderCallback<StreamSubject, Stream<?>> assertionCallback) {
         return ExpectFailure.expectFailureAbout(streams(), assertionCallback);
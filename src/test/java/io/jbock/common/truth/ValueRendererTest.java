@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.jbock.common.truth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static io.jbock.common.truth.Truth.assertThat;
+
+/** Tests for {@link ValueRenderer}. */
+final class ValueRendererTest {
+    private static final ValueRenderer UNLIMITED =
+            new ValueRenderer(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    @Test
+    void sameAsToStringWithinBudget() {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("a", List.of(1, 2));
+        map.put(null, new TreeSet<>(Set.of("x", "y")));
+        List<Object> list = new ArrayList<>();
+        list.add(map);
+        list.add(null);
+        list.add(list);
+        assertThat(UNLIMITED.render(list)).isEqualTo(list.toString());
+        assertThat(UNLIMITED.render(map)).isEqualTo(map.toString());
+        assertThat(UNLIMITED.render("foo")).isEqualTo("foo");
+        assertThat(UNLIMITED.render(null)).isEqualTo("null");
+    }
+
+    @Test
+    void arraysAsLists() {
+        Object[] array = {new int[] {1, 2}, new double[] {0.5}, "a", List.of(new int[0])};
+        String rendered = UNLIMITED.renderArraysAsLists(array);
+        assertThat(rendered).startsWith("[[1, 2], [0.5], a, [[I@");
+        assertThat(UNLIMITED.render(array)).startsWith("[Ljava.lang.Object;@");
+    }
+
+    @Test
+    void tooManyElements() {
+        ValueRenderer renderer = new ValueRenderer(Integer.MAX_VALUE, 4);
+        assertThat(renderer.render(range(5_000_000)))
+                .isEqualTo("[0, 1, … 4,999,996 more …, 4999998, 4999999]");
+        assertThat(renderer.render(range(4))).isEqualTo("[0, 1, 2, 3]");
+        assertThat(renderer.render(range(5))).isEqualTo("[0, 1, … 1 more …, 3, 4]");
+        assertThat(renderer.renderArraysAsLists(new int[] {1, 2, 3, 4, 5, 6}))
+                .isEqualTo("[1, 2, … 2 more …, 5, 6]");
+    }
+
+    @Test
+    void tooManyElements_nested() {
+        ValueRenderer renderer = new ValueRenderer(Integer.MAX_VALUE, 2);
+        Map<String, List<Integer>> map = new LinkedHashMap<>();
+        map.put("a", List.of(1, 2, 3));
+        map.put("b", List.of());
+        map.put("c", List.of(4));
+        assertThat(renderer.render(map)).isEqualTo("{a=[1, … 1 more …, 3], … 1 more …, c=[4]}");
+    }
+
+    @Test
+    void tooManyCharacters() {
+        ValueRenderer renderer = new ValueRenderer(10, Integer.MAX_VALUE);
+        assertThat(renderer.render("abcdefghijklmnopqrstuvwxyz"))
+                .isEqualTo("abcde… 16 more characters …vwxyz");
+        assertThat(renderer.render(List.of("abcdefgh", "ijklmnop", "qrstuvwx")))
+                .isEqualTo("[abcdefgh, … 8 more characters …, … 1 more …]");
+    }
+
+    @Test
+    void tooManyCharacters_inTail() {
+        ValueRenderer renderer = new ValueRenderer(20, 4);
+        List<String> list = new ArrayList<>(List.of("a", "b"));
+        for (int i = 0; i < 100; i++) {
+            list.add("abcdefghijklmnopqrstuvwxyz");
+        }
+        assertThat(renderer.render(list)).isEqualTo("[a, b, … 100 more …]");
+    }
+
+    @Test
+    void tooManyCharacters_surrogatePairs() {
+        ValueRenderer renderer = new ValueRenderer(3, Integer.MAX_VALUE);
+        assertThat(renderer.render("a😀bc😀d"))
+                .isEqualTo("a… 6 more characters …d");
+    }
+
+    @Test
+    void elementsOfIterable() {
+        ValueRenderer renderer = new ValueRenderer(Integer.MAX_VALUE, 2);
+        Iterable<Integer> iterable = () -> range(10).iterator();
+        assertThat(renderer.renderElements(iterable)).isEqualTo("[0, … 8 more …, 9]");
+        assertThat(ValueRenderer.hasDefaultToString(iterable.getClass())).isTrue();
+        assertThat(ValueRenderer.hasDefaultToString(ArrayList.class)).isFalse();
+    }
+
+    /** Returns the list of the integers from 0 to {@code size - 1}, without storing them. */
+    private static List<Integer> range(int size) {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}